@@ -0,0 +1,213 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the {@link Deque} operations of
+ * {@link UnrolledLinkedList}, compared with {@link ArrayDeque} and
+ * {@link LinkedList}. {@link ListBenchmark} covers the {@link List}
+ * operations, which <tt>ArrayDeque</tt> does not have. As there, the
+ * benchmarks are run by two subclasses, {@link Jdk} and {@link Unrolled},
+ * so that only <tt>UnrolledLinkedList</tt> is parameterized over the node
+ * capacity.
+ *
+ * <p>The queue and stack benchmarks add and remove one element at a time on
+ * a deque that holds <tt>size</tt> elements, so its size stays the same
+ * during a measurement.
+ *
+ * @see ListBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public abstract class DequeBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private Deque<Integer> deque;
+
+    /**
+     * The elements of the deque, in order, for the bulk operations.
+     */
+    private List<Integer> elements;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        elements = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(i);
+        }
+        deque = newDeque();
+        deque.addAll(elements);
+
+    }
+
+    /**
+     * Returns a new, empty deque of the benchmarked implementation.
+     *
+     * @return an empty deque
+     */
+    protected abstract Deque<Integer> newDeque();
+
+    /**
+     * Adds an element at the tail and removes the head, as a FIFO queue.
+     */
+    @Benchmark
+    public Integer queue() {
+
+        deque.offerLast(deque.size());
+        return deque.pollFirst();
+
+    }
+
+    /**
+     * Adds an element at the head and removes the tail, as a FIFO queue in
+     * the other direction.
+     */
+    @Benchmark
+    public Integer reverseQueue() {
+
+        deque.offerFirst(deque.size());
+        return deque.pollLast();
+
+    }
+
+    /**
+     * Pushes an element and pops it again, as a LIFO stack.
+     */
+    @Benchmark
+    public Integer stack() {
+
+        deque.push(deque.size());
+        return deque.pop();
+
+    }
+
+    /**
+     * Fills an empty deque by adding <tt>size</tt> elements at the head and
+     * empties it again from the tail.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long fillAndDrain() {
+
+        Deque<Integer> d = newDeque();
+        for (int i = 0; i < size; i++) {
+            d.addFirst(elements.get(i));
+        }
+        long sum = 0;
+        Integer e;
+        while ((e = d.pollLast()) != null) {
+            sum += e;
+        }
+        return sum;
+
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long iterate() {
+
+        long sum = 0;
+        for (Integer e : deque) {
+            sum += e;
+        }
+        return sum;
+
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long descendingIterate() {
+
+        long sum = 0;
+        Iterator<Integer> it = deque.descendingIterator();
+        while (it.hasNext()) {
+            sum += it.next();
+        }
+        return sum;
+
+    }
+
+    /**
+     * Copies all elements into an empty deque with <tt>addAll</tt>.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Deque<Integer> addAll() {
+
+        Deque<Integer> d = newDeque();
+        d.addAll(elements);
+        return d;
+
+    }
+
+    /**
+     * The benchmarks of the deques of the JDK.
+     */
+    public static class Jdk extends DequeBenchmark {
+
+        @Param({"ArrayDeque", "LinkedList"})
+        public String implementation;
+
+        @Override
+        protected Deque<Integer> newDeque() {
+
+            if (implementation.equals("ArrayDeque")) {
+                return new ArrayDeque<Integer>();
+            }
+            if (implementation.equals("LinkedList")) {
+                return new LinkedList<Integer>();
+            }
+            throw new IllegalArgumentException(implementation);
+
+        }
+
+    }
+
+    /**
+     * The benchmarks of <tt>UnrolledLinkedList</tt>.
+     */
+    public static class Unrolled extends DequeBenchmark {
+
+        @Param({"16", "64", "256"})
+        public int nodeCapacity;
+
+        @Override
+        protected Deque<Integer> newDeque() {
+
+            return new UnrolledLinkedList<Integer>(nodeCapacity);
+
+        }
+
+    }
+
+}
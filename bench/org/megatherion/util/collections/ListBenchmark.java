@@ -0,0 +1,325 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the {@link List} operations of {@link UnrolledLinkedList},
+ * compared with {@link ArrayList} and {@link LinkedList}. The benchmarks are
+ * run by two subclasses: {@link Jdk} for the lists of the JDK, and
+ * {@link Unrolled} for the plain and the indexed <tt>UnrolledLinkedList</tt>,
+ * which is the only one that is also parameterized over the node capacity.
+ *
+ * <p>The positions and values used by the benchmarks are drawn from a fixed
+ * seed in advance, so that all implementations see the same sequence of
+ * operations. The benchmarks that insert elements remove as many again, so
+ * the size of the list stays close to <tt>size</tt> during a measurement.
+ *
+ * @see DequeBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public abstract class ListBenchmark {
+
+    /**
+     * The number of precomputed positions and values; a power of two.
+     */
+    private static final int OPERATIONS = 1 << 16;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<Integer> list;
+
+    /**
+     * The elements of the list, in order, for the bulk operations.
+     */
+    private List<Integer> elements;
+
+    /**
+     * The elements inserted and removed again by the bulk operations.
+     */
+    private List<Integer> negatives;
+
+    private int[] positions;
+
+    private Integer[] values;
+
+    /**
+     * The kind of each operation of the mixed workload.
+     */
+    private int[] kinds;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        elements = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(i);
+        }
+        negatives = new ArrayList<Integer>(1000);
+        for (int i = 1; i <= 1000; i++) {
+            negatives.add(-i);
+        }
+        list = newList();
+        list.addAll(elements);
+        Random random = new Random(42);
+        positions = new int[OPERATIONS];
+        values = new Integer[OPERATIONS];
+        kinds = new int[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            positions[i] = random.nextInt(size);
+            values[i] = random.nextInt(size);
+            kinds[i] = random.nextInt(10);
+        }
+
+    }
+
+    /**
+     * Returns a new, empty list of the benchmarked implementation.
+     *
+     * @return an empty list
+     */
+    protected abstract List<Integer> newList();
+
+    private int nextOperation() {
+
+        return next++ & (OPERATIONS - 1);
+
+    }
+
+    /**
+     * Appends <tt>size</tt> elements one at a time to an empty list.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Integer> append() {
+
+        List<Integer> l = newList();
+        for (int i = 0; i < size; i++) {
+            l.add(elements.get(i));
+        }
+        return l;
+
+    }
+
+    @Benchmark
+    public Integer get() {
+
+        return list.get(positions[nextOperation()]);
+
+    }
+
+    @Benchmark
+    public Integer set() {
+
+        int op = nextOperation();
+        return list.set(positions[op], values[op]);
+
+    }
+
+    /**
+     * Inserts an element at a random position and removes one at another.
+     */
+    @Benchmark
+    public Integer addRemove() {
+
+        int op = nextOperation();
+        list.add(positions[op], values[op]);
+        return list.remove(positions[(op + 1) & (OPERATIONS - 1)]);
+
+    }
+
+    /**
+     * Inserts an element at the front and removes it again.
+     */
+    @Benchmark
+    public Integer addRemoveFirst() {
+
+        list.add(0, values[nextOperation()]);
+        return list.remove(0);
+
+    }
+
+    /**
+     * Inserts and removes a run of 16 elements at a random position through
+     * a list iterator, like an editor buffer does.
+     */
+    @Benchmark
+    public int iteratorEdit() {
+
+        int op = nextOperation();
+        ListIterator<Integer> it = list.listIterator(positions[op]);
+        for (int i = 0; i < 16; i++) {
+            it.add(values[op]);
+        }
+        for (int i = 0; i < 16; i++) {
+            it.previous();
+            it.remove();
+        }
+        return it.nextIndex();
+
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long iterate() {
+
+        long sum = 0;
+        for (Integer e : list) {
+            sum += e;
+        }
+        return sum;
+
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void forEach(Blackhole blackhole) {
+
+        list.forEach(blackhole::consume);
+
+    }
+
+    /**
+     * Searches for an element that is, on average, in the middle of the
+     * list.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int indexOf() {
+
+        return list.indexOf(values[nextOperation()]);
+
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object[] toArray() {
+
+        return list.toArray();
+
+    }
+
+    /**
+     * Copies all elements into an empty list with <tt>addAll</tt>.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Integer> addAll() {
+
+        List<Integer> l = newList();
+        l.addAll(elements);
+        return l;
+
+    }
+
+    /**
+     * Inserts 1000 negative elements with <tt>addAll(int, Collection)</tt> at
+     * a random position and removes them again with <tt>removeIf</tt>.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean addAllRemoveIf() {
+
+        list.addAll(positions[nextOperation()], negatives);
+        return list.removeIf(e -> e < 0);
+
+    }
+
+    /**
+     * A mix of 70% <tt>get</tt>, 10% <tt>set</tt>, 10% <tt>add(int, E)</tt>
+     * and 10% <tt>remove(int)</tt> at random positions.
+     */
+    @Benchmark
+    public Integer mixed() {
+
+        int op = nextOperation();
+        int kind = kinds[op];
+        int index = positions[op];
+        if (kind < 7) {
+            return list.get(index);
+        } else if (kind == 7) {
+            return list.set(index, values[op]);
+        } else if (kind == 8) {
+            list.add(index, values[op]);
+            return null;
+        }
+        // keep the size from drifting below the initial one
+        return (list.size() > size) ? list.remove(index) : list.set(index, values[op]);
+
+    }
+
+    /**
+     * The benchmarks of the lists of the JDK.
+     */
+    public static class Jdk extends ListBenchmark {
+
+        @Param({"ArrayList", "LinkedList"})
+        public String implementation;
+
+        @Override
+        protected List<Integer> newList() {
+
+            if (implementation.equals("ArrayList")) {
+                return new ArrayList<Integer>();
+            }
+            if (implementation.equals("LinkedList")) {
+                return new LinkedList<Integer>();
+            }
+            throw new IllegalArgumentException(implementation);
+
+        }
+
+    }
+
+    /**
+     * The benchmarks of <tt>UnrolledLinkedList</tt>, with and without the
+     * node index.
+     */
+    public static class Unrolled extends ListBenchmark {
+
+        @Param({"false", "true"})
+        public boolean indexed;
+
+        @Param({"16", "64", "256"})
+        public int nodeCapacity;
+
+        @Override
+        protected List<Integer> newList() {
+
+            return new UnrolledLinkedList<Integer>(nodeCapacity, indexed);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,1081 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe unrolled linked list. Unlike a list wrapped with
+ * {@link java.util.Collections#synchronizedList Collections.synchronizedList},
+ * it does not serialize all threads behind a single monitor: every node
+ * carries its own lock, so operations on different nodes proceed in parallel.
+ *
+ * <p>Positional operations walk the node chain with hand-over-hand locking:
+ * the lock of the next node is acquired before the lock of the current one
+ * is released, and locks are only ever acquired in list order. A split
+ * links the new node while the node being split is locked, and a merge
+ * locks both nodes involved. Appending only locks the last node, so
+ * <tt>add(E)</tt> does not contend with operations on other nodes. Every
+ * operation is atomic, but the index of an element may of course change
+ * between two calls if other threads modify the list in front of it.
+ *
+ * <p>The iterators returned by this class's <tt>iterator</tt> method are
+ * <i>weakly consistent</i>: they never throw
+ * {@link java.util.ConcurrentModificationException
+ * ConcurrentModificationException}, they return the elements that existed
+ * when the iterator was created exactly once unless they are removed in the
+ * meantime, and they may or may not reflect other modifications. They copy
+ * the elements of one node at a time and do not support <tt>remove</tt>.
+ * The list iterators are read-only iterators over a snapshot of the list:
+ * their <tt>set</tt>, <tt>add</tt> and <tt>remove</tt> methods throw an
+ * <tt>UnsupportedOperationException</tt>, so the list must be modified
+ * through its own methods. The views returned by <tt>subList</tt> can be
+ * modified through their positional methods and <tt>clear</tt>, which
+ * removes the range at once with {@link #removeRange(int, int)
+ * removeRange}.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see UnrolledLinkedList
+ */
+public class ConcurrentUnrolledLinkedList<E> extends AbstractList<E> implements List<E> {
+
+    /**
+     * The maximum number of elements that can be stored in a single node.
+     */
+    private final int nodeCapacity;
+
+    /**
+     * The current size of this list. It is only changed while the lock of
+     * the modified node is held.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The first node of this list. It is never removed.
+     */
+    private final Node firstNode;
+
+    /**
+     * The last node of this list. It is only changed while the lock of the
+     * current last node is held.
+     */
+    private volatile Node lastNode;
+
+    /**
+     * Constructs an empty list with the specified
+     * {@link ConcurrentUnrolledLinkedList#nodeCapacity nodeCapacity}. For
+     * performance reasons <tt>nodeCapacity</tt> must be greater than or
+     * equal to 8.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public ConcurrentUnrolledLinkedList(int nodeCapacity) throws IllegalArgumentException {
+
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        this.nodeCapacity = nodeCapacity;
+        firstNode = new Node();
+        lastNode = firstNode;
+
+    }
+
+    /**
+     * Constructs an empty list with
+     * {@link ConcurrentUnrolledLinkedList#nodeCapacity nodeCapacity} of 16.
+     */
+    public ConcurrentUnrolledLinkedList() {
+
+        this(16);
+
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    @Override
+    public int size() {
+
+        return size.get();
+
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E get(int index) {
+
+        Position position = lockPosition(index, false);
+        try {
+            return (E) position.node.elements[position.ptr];
+        } finally {
+            position.node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E set(int index, E element) {
+
+        Position position = lockPosition(index, false);
+        try {
+            E el = (E) position.node.elements[position.ptr];
+            position.node.elements[position.ptr] = element;
+            return el;
+        } finally {
+            position.node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Appends the specified element to the end of this list. Only the last
+     * node is locked.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link Collection#add})
+     */
+    @Override
+    public boolean add(E e) {
+
+        Node node = lockLastNode();
+        try {
+            appendToNode(node, e);
+        } finally {
+            node.lock.unlock();
+        }
+        return true;
+
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end of
+     * this list, in the order that they are returned by the collection's
+     * iterator. The elements are appended atomically: no other element is
+     * inserted between them.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+
+        Object[] a = c.toArray();
+        if (a.length == 0) {
+            return false;
+        }
+        Node node = lockLastNode();
+        try {
+            // fill up the last node, and publish the nodes holding
+            // the rest of the elements all at once
+            int n = Math.min(nodeCapacity - node.numElements, a.length);
+            System.arraycopy(a, 0, node.elements, node.numElements, n);
+            node.numElements += n;
+            Node first = null;
+            Node last = null;
+            for (int from = n; from < a.length; from += nodeCapacity) {
+                Node newNode = new Node();
+                newNode.numElements = Math.min(nodeCapacity, a.length - from);
+                System.arraycopy(a, from, newNode.elements, 0, newNode.numElements);
+                if (last == null) {
+                    first = newNode;
+                } else {
+                    last.next = newNode;
+                }
+                last = newNode;
+            }
+            if (first != null) {
+                node.next = first;
+                lastNode = last;
+            }
+            size.addAndGet(a.length);
+        } finally {
+            node.lock.unlock();
+        }
+        return true;
+
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     * Shifts the element currently at that position (if any) and any
+     * subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    @Override
+    public void add(int index, E element) {
+
+        Position position = lockPosition(index, true);
+        try {
+            insertIntoNode(position.node, position.ptr, element);
+        } finally {
+            position.node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes the element at the specified position in this list. Shifts any
+     * subsequent elements to the left (subtracts one from their indices).
+     * Returns the element that was removed from the list.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E remove(int index) {
+
+        Position position = lockPosition(index, false);
+        try {
+            E el = (E) position.node.elements[position.ptr];
+            removeFromNode(position.node, position.ptr);
+            return el;
+        } finally {
+            position.node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.
+     *
+     * @param o element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    @Override
+    public boolean remove(Object o) {
+
+        Node node = firstNode;
+        node.lock.lock();
+        try {
+            while (true) {
+                for (int ptr = 0; ptr < node.numElements; ptr++) {
+                    if (o == null ? node.elements[ptr] == null : o.equals(node.elements[ptr])) {
+                        removeFromNode(node, ptr);
+                        return true;
+                    }
+                }
+                Node next = node.next;
+                if (next == null) {
+                    return false;
+                }
+                next.lock.lock();
+                node.lock.unlock();
+                node = next;
+            }
+        } finally {
+            node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    @Override
+    public int indexOf(Object o) {
+
+        int index = 0;
+        Node node = firstNode;
+        node.lock.lock();
+        try {
+            while (true) {
+                for (int ptr = 0; ptr < node.numElements; ptr++) {
+                    if (o == null ? node.elements[ptr] == null : o.equals(node.elements[ptr])) {
+                        return index + ptr;
+                    }
+                }
+                index += node.numElements;
+                Node next = node.next;
+                if (next == null) {
+                    return -1;
+                }
+                next.lock.lock();
+                node.lock.unlock();
+                node = next;
+            }
+        } finally {
+            node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+
+        int index = 0;
+        int lastIndex = -1;
+        Node node = firstNode;
+        node.lock.lock();
+        try {
+            while (true) {
+                for (int ptr = 0; ptr < node.numElements; ptr++) {
+                    if (o == null ? node.elements[ptr] == null : o.equals(node.elements[ptr])) {
+                        lastIndex = index + ptr;
+                    }
+                }
+                index += node.numElements;
+                Node next = node.next;
+                if (next == null) {
+                    return lastIndex;
+                }
+                next.lock.lock();
+                node.lock.unlock();
+                node = next;
+            }
+        } finally {
+            node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     */
+    @Override
+    public boolean contains(Object o) {
+
+        return indexOf(o) != -1;
+
+    }
+
+    /**
+     * Removes all of the elements from this list. All nodes are locked while
+     * the list is emptied.
+     */
+    @Override
+    public void clear() {
+
+        List<Node> nodes = lockAllNodes();
+        try {
+            for (int i = 1; i < nodes.size(); i++) {
+                // leave the contents in place for iterators
+                nodes.get(i).removed = true;
+            }
+            for (int i = 0; i < firstNode.numElements; i++) {
+                firstNode.elements[i] = null;
+            }
+            firstNode.numElements = 0;
+            firstNode.next = null;
+            lastNode = firstNode;
+            size.set(0);
+        } finally {
+            unlockAll(nodes);
+        }
+
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <tt>fromIndex</tt>, inclusive, and <tt>toIndex</tt>, exclusive. All
+     * nodes are locked while the elements are removed, so the removal is
+     * atomic; the nodes that hold the range are compacted and merged with
+     * their neighbours where their elements fit into one node.
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> or
+     *         <tt>toIndex</tt> is out of range
+     *         <tt>(fromIndex &lt; 0 || toIndex &gt; size() ||
+     *         toIndex &lt; fromIndex)</tt>
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+
+        List<Node> nodes = lockAllNodes();
+        try {
+            if (fromIndex < 0 || toIndex > size.get() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (fromIndex == toIndex) {
+                return;
+            }
+            // the last node in front of the range, from which the merges
+            // start, and the first node after the range
+            Node first = firstNode;
+            Node end = null;
+            int base = 0;
+            for (Node node : nodes) {
+                int n = node.numElements;
+                if (base + n <= fromIndex) {
+                    first = node;
+                } else if (base < toIndex) {
+                    int from = Math.max(fromIndex - base, 0);
+                    int to = Math.min(toIndex - base, n);
+                    System.arraycopy(node.elements, to, node.elements, from, n - to);
+                    for (int i = n - (to - from); i < n; i++) {
+                        node.elements[i] = null;
+                    }
+                    node.numElements = n - (to - from);
+                } else {
+                    end = node;
+                    break;
+                }
+                base += n;
+            }
+            size.addAndGet(fromIndex - toIndex);
+            // merge the nodes that have become empty or small, up to and
+            // including the first node after the range
+            Node stop = (end == null) ? null : end.next;
+            Node node = first;
+            Node next;
+            while ((next = node.next) != stop) {
+                if (node.numElements + next.numElements <= nodeCapacity) {
+                    mergeWithNextNode(node);
+                } else {
+                    node = next;
+                }
+            }
+        } finally {
+            unlockAll(nodes);
+        }
+
+    }
+
+    /**
+     * Removes all of the elements of this list that satisfy the given
+     * predicate. The nodes are processed one after the other with
+     * hand-over-hand locking, and neighbouring nodes are merged on the way
+     * whenever their elements fit into one node.
+     *
+     * @param filter a predicate which returns <tt>true</tt> for elements to be
+     *        removed
+     * @return <tt>true</tt> if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+
+        if (filter == null) {
+            throw new NullPointerException();
+        }
+        boolean modified = false;
+        Node node = firstNode;
+        node.lock.lock();
+        try {
+            modified |= filterNode(node, filter);
+            Node next;
+            while ((next = node.next) != null) {
+                next.lock.lock();
+                boolean merged = false;
+                try {
+                    modified |= filterNode(next, filter);
+                    if (node.numElements + next.numElements <= nodeCapacity) {
+                        mergeWithNextNode(node);
+                        merged = true;
+                    }
+                } finally {
+                    if (merged) {
+                        next.lock.unlock();
+                    } else {
+                        node.lock.unlock();
+                        node = next;
+                    }
+                }
+            }
+        } finally {
+            node.lock.unlock();
+        }
+        return modified;
+
+    }
+
+    /**
+     * Removes from this list all of its elements that are contained in the
+     * specified collection.
+     *
+     * @param c collection containing elements to be removed from this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        return removeIf(e -> c.contains(e));
+
+    }
+
+    /**
+     * Retains only the elements in this list that are contained in the
+     * specified collection.
+     *
+     * @param c collection containing elements to be retained in this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        return removeIf(e -> !c.contains(e));
+
+    }
+
+    /**
+     * Replaces each element of this list with the result of applying the
+     * operator to that element. Each node is locked while its elements are
+     * replaced.
+     *
+     * @param operator the operator to apply to each element
+     * @throws NullPointerException if the specified operator is null
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+
+        if (operator == null) {
+            throw new NullPointerException();
+        }
+        Node node = firstNode;
+        node.lock.lock();
+        try {
+            while (true) {
+                for (int ptr = 0; ptr < node.numElements; ptr++) {
+                    node.elements[ptr] = operator.apply((E) node.elements[ptr]);
+                }
+                Node next = node.next;
+                if (next == null) {
+                    break;
+                }
+                next.lock.lock();
+                node.lock.unlock();
+                node = next;
+            }
+        } finally {
+            node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Sorts this list according to the order induced by the specified
+     * {@link Comparator}. The sort is stable and atomic: all nodes are locked
+     * while the list is sorted, and the list is left unchanged if the
+     * comparator throws an exception.
+     *
+     * @param c the {@code Comparator} used to compare list elements.
+     *          A {@code null} value indicates that the elements'
+     *          {@linkplain Comparable natural ordering} should be used
+     * @throws ClassCastException if the list contains elements that are not
+     *         <i>mutually comparable</i> using the specified comparator
+     */
+    @Override
+    public void sort(Comparator<? super E> c) {
+
+        List<Node> nodes = lockAllNodes();
+        try {
+            Object[] a = new Object[size.get()];
+            int i = 0;
+            for (Node node : nodes) {
+                System.arraycopy(node.elements, 0, a, i, node.numElements);
+                i += node.numElements;
+            }
+            Arrays.sort(a, (Comparator<Object>) c);
+            i = 0;
+            for (Node node : nodes) {
+                System.arraycopy(a, i, node.elements, 0, node.numElements);
+                i += node.numElements;
+            }
+        } finally {
+            unlockAll(nodes);
+        }
+
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements in this list in
+     * proper sequence. The elements of a node are copied when the iterator
+     * reaches that node. The iterator does not support <tt>remove</tt>.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+
+        return new ConcurrentIterator();
+
+    }
+
+    /**
+     * Returns a read-only list iterator over a snapshot of the elements in
+     * this list, starting at the specified position.
+     *
+     * @param index index of the first element to be returned from the
+     *        list iterator (by a call to <tt>next</tt>)
+     * @return a list iterator over a snapshot of the elements in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    @Override
+    public ListIterator<E> listIterator(int index) {
+
+        List<E> snapshot = (List<E>) Arrays.asList(toArray());
+        return Collections.unmodifiableList(snapshot).listIterator(index);
+
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in proper
+     * sequence. The array is filled by a weakly consistent iterator.
+     *
+     * @return an array containing all of the elements in this list
+     */
+    @Override
+    public Object[] toArray() {
+
+        ArrayList<Object> elements = new ArrayList<Object>(size.get());
+        for (E e : this) {
+            elements.add(e);
+        }
+        return elements.toArray();
+
+    }
+
+    /**
+     * Locks the node that contains the element at the specified position,
+     * walking the node chain with hand-over-hand locking.
+     *
+     * @param index the position of the element
+     * @param insert <tt>true</tt> if the position is an insertion point, that
+     *        is if <tt>index</tt> may be equal to the size of the list
+     * @return the locked node and the position of the element within it
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    private Position lockPosition(int index, boolean insert) {
+
+        if (index < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        int ptr = index;
+        Node node = firstNode;
+        node.lock.lock();
+        while (insert ? ptr > node.numElements : ptr >= node.numElements) {
+            Node next = node.next;
+            if (next == null) {
+                node.lock.unlock();
+                throw new IndexOutOfBoundsException();
+            }
+            ptr -= node.numElements;
+            next.lock.lock();
+            node.lock.unlock();
+            node = next;
+        }
+        return new Position(node, ptr);
+
+    }
+
+    /**
+     * Locks the last node of this list.
+     *
+     * @return the last node, locked
+     */
+    private Node lockLastNode() {
+
+        while (true) {
+            Node node = lastNode;
+            node.lock.lock();
+            // the node may have been merged into its predecessor or split
+            // before it could be locked
+            if (!node.removed && node.next == null) {
+                return node;
+            }
+            node.lock.unlock();
+        }
+
+    }
+
+    /**
+     * Locks all nodes of this list, in list order.
+     *
+     * @return the locked nodes
+     */
+    private List<Node> lockAllNodes() {
+
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        Node node = firstNode;
+        node.lock.lock();
+        nodes.add(node);
+        while ((node = node.next) != null) {
+            node.lock.lock();
+            nodes.add(node);
+        }
+        return nodes;
+
+    }
+
+    /**
+     * Unlocks the specified nodes.
+     *
+     * @param nodes the nodes to be unlocked
+     */
+    private void unlockAll(List<Node> nodes) {
+
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            nodes.get(i).lock.unlock();
+        }
+
+    }
+
+    /**
+     * Appends an element to the specified node, which must be locked and must
+     * be the last node. If the node is full, a new last node is linked after
+     * it; that node is only published once it holds the element.
+     *
+     * @param node the last node of the list
+     * @param e the element to be appended
+     */
+    private void appendToNode(Node node, E e) {
+
+        if (node.numElements < nodeCapacity) {
+            node.elements[node.numElements++] = e;
+        } else {
+            Node newNode = new Node();
+            newNode.elements[0] = e;
+            newNode.numElements = 1;
+            node.next = newNode;
+            lastNode = newNode;
+        }
+        size.incrementAndGet();
+
+    }
+
+    /**
+     * Inserts an element into the specified node, which must be locked. If
+     * the node is full, half of its elements are moved to a new node that is
+     * linked after it, unless the element is appended to the last node. The
+     * new node is only published once all of its elements are in place.
+     *
+     * @param node the node into which the element should be inserted
+     * @param ptr the position of the element within the node
+     * @param element the element to be inserted
+     */
+    private void insertIntoNode(Node node, int ptr, E element) {
+
+        if (node.numElements == nodeCapacity) {
+            Node newNode = new Node();
+            int elementsToMove;
+            if (node.next == null && ptr == node.numElements) {
+                // appending, move nothing
+                elementsToMove = 0;
+            } else {
+                // move half of the elements
+                elementsToMove = nodeCapacity / 2;
+            }
+            int startIndex = node.numElements - elementsToMove;
+            System.arraycopy(node.elements, startIndex, newNode.elements, 0, elementsToMove);
+            newNode.numElements = elementsToMove;
+            if (ptr > startIndex || elementsToMove == 0) {
+                insertIntoArray(newNode, ptr - startIndex, element);
+            }
+            newNode.next = node.next;
+            node.next = newNode;
+            if (newNode.next == null) {
+                lastNode = newNode;
+            }
+            for (int i = startIndex; i < node.numElements; i++) {
+                node.elements[i] = null;
+            }
+            node.numElements = startIndex;
+            if (ptr <= startIndex && elementsToMove != 0) {
+                insertIntoArray(node, ptr, element);
+            }
+        } else {
+            insertIntoArray(node, ptr, element);
+        }
+        size.incrementAndGet();
+
+    }
+
+    /**
+     * Inserts an element into the array of a node that is not full.
+     */
+    private void insertIntoArray(Node node, int ptr, E element) {
+
+        for (int i = node.numElements; i > ptr; i--) {
+            node.elements[i] = node.elements[i - 1];
+        }
+        node.elements[ptr] = element;
+        node.numElements++;
+
+    }
+
+    /**
+     * Removes an element from the specified node, which must be locked. If
+     * the elements of the next node then fit into this node, the next node
+     * is locked and merged into this one.
+     *
+     * @param node the node from which the element should be removed
+     * @param ptr the position of the element within the node
+     */
+    private void removeFromNode(Node node, int ptr) {
+
+        node.numElements--;
+        for (int i = ptr; i < node.numElements; i++) {
+            node.elements[i] = node.elements[i + 1];
+        }
+        node.elements[node.numElements] = null;
+        size.decrementAndGet();
+        Node next = node.next;
+        if (next != null) {
+            next.lock.lock();
+            try {
+                if (next.numElements + node.numElements <= nodeCapacity) {
+                    mergeWithNextNode(node);
+                }
+            } finally {
+                next.lock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * Removes the elements that satisfy the predicate from the specified
+     * node, which must be locked.
+     *
+     * @return <tt>true</tt> if any elements were removed
+     */
+    private boolean filterNode(Node node, Predicate<? super E> filter) {
+
+        int kept = 0;
+        for (int ptr = 0; ptr < node.numElements; ptr++) {
+            Object element = node.elements[ptr];
+            if (!filter.test((E) element)) {
+                node.elements[kept++] = element;
+            }
+        }
+        int removed = node.numElements - kept;
+        for (int i = kept; i < node.numElements; i++) {
+            node.elements[i] = null;
+        }
+        node.numElements = kept;
+        size.addAndGet(-removed);
+        return removed > 0;
+
+    }
+
+    /**
+     * Moves the elements of the next node to the end of the specified node
+     * and unlinks the next node. Both nodes must be locked. The next node
+     * is marked as removed, but keeps its elements and its <tt>next</tt>
+     * field, so that iterators that have yet to visit it still find the
+     * elements it held and the rest of the list.
+     *
+     * @param node the node into which the next node is merged
+     */
+    private void mergeWithNextNode(Node node) {
+
+        Node next = node.next;
+        System.arraycopy(next.elements, 0, node.elements, node.numElements, next.numElements);
+        node.numElements += next.numElements;
+        next.removed = true;
+        node.next = next.next;
+        if (node.next == null) {
+            lastNode = node;
+        }
+
+    }
+
+    /**
+     * A node of the list.
+     */
+    private class Node {
+
+        /**
+         * The lock that guards the fields of this node.
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The next node. It is written while this node is locked, and can be
+         * read without holding the lock.
+         */
+        volatile Node next;
+
+        /**
+         * The number of elements stored in this node.
+         */
+        int numElements = 0;
+
+        /**
+         * The array in which the elements are stored.
+         */
+        Object[] elements;
+
+        /**
+         * <tt>true</tt> if this node has been unlinked from the list.
+         */
+        boolean removed;
+
+        /**
+         * Constructs a new node.
+         */
+        Node() {
+
+            elements = new Object[nodeCapacity];
+
+        }
+
+    }
+
+    /**
+     * A locked node and the position of an element within it.
+     */
+    private class Position {
+
+        final Node node;
+        final int ptr;
+
+        Position(Node node, int ptr) {
+
+            this.node = node;
+            this.ptr = ptr;
+
+        }
+
+    }
+
+    /**
+     * A weakly consistent iterator. It copies the elements of a node when it
+     * reaches it, together with the <tt>next</tt> field, so it neither
+     * misses nor repeats elements that a concurrent split or merge moves
+     * between nodes: elements that are moved to a new node after a copied
+     * node are not visited again, and a node that is merged into a copied
+     * node still holds its elements when it is reached.
+     */
+    private class ConcurrentIterator implements Iterator<E> {
+
+        /**
+         * The elements of the current node.
+         */
+        private Object[] elements;
+
+        /**
+         * The number of elements of the current node.
+         */
+        private int numElements;
+
+        /**
+         * The position of the next element within the current node.
+         */
+        private int ptr;
+
+        /**
+         * The node to copy when the current one is exhausted.
+         */
+        private Node nextNode;
+
+        ConcurrentIterator() {
+
+            nextNode = firstNode;
+            advance();
+
+        }
+
+        /**
+         * Copies the next node that holds any elements.
+         */
+        private void advance() {
+
+            ptr = 0;
+            numElements = 0;
+            while (numElements == 0 && nextNode != null) {
+                Node node = nextNode;
+                node.lock.lock();
+                try {
+                    elements = Arrays.copyOf(node.elements, node.numElements);
+                    numElements = node.numElements;
+                    nextNode = node.next;
+                } finally {
+                    node.lock.unlock();
+                }
+            }
+
+        }
+
+        public boolean hasNext() {
+
+            return ptr < numElements;
+
+        }
+
+        public E next() {
+
+            if (ptr >= numElements) {
+                throw new NoSuchElementException();
+            }
+            E el = (E) elements[ptr++];
+            if (ptr == numElements) {
+                advance();
+            }
+            return el;
+
+        }
+
+    }
+
+}
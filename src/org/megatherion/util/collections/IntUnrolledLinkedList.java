@@ -0,0 +1,753 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import org.megatherion.util.collections.UnrolledLinkedList.SplitPolicy;
+
+/**
+ * An unrolled linked list of <tt>int</tt> values. It splits and merges its
+ * nodes like {@link UnrolledLinkedList}, with the same
+ * {@link SplitPolicy split policies} and merge threshold, but the nodes
+ * store the values in <tt>int[]</tt> arrays, so no
+ * <tt>Integer</tt> objects are created or referenced by the list.
+ *
+ * <p>The <tt>Integer</tt> based methods of the {@link java.util.List List}
+ * interface are supported as well, but they box and unbox their arguments and
+ * results. Use the <tt>Int</tt> variants (<tt>getInt</tt>,
+ * <tt>addInt</tt>, <tt>intIterator</tt>, ...) on hot paths.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by this class are <i>fail-fast</i>, just like the
+ * ones of {@link UnrolledLinkedList}.
+ *
+ * @see UnrolledLinkedList
+ */
+public class IntUnrolledLinkedList extends AbstractList<Integer> {
+
+    /**
+     * The maximum number of elements that can be stored in a single node.
+     */
+    private int nodeCapacity;
+
+    /**
+     * The current size of this list.
+     */
+    private int size = 0;
+
+    /**
+     * The first node of this list.
+     */
+    private Node firstNode;
+
+    /**
+     * The last node of this list.
+     */
+    private Node lastNode;
+
+    /**
+     * Determines how a full node is split when an element is inserted into it.
+     */
+    private SplitPolicy splitPolicy = SplitPolicy.ADAPTIVE;
+
+    /**
+     * A node is only merged with one of its neighbours after a removal if it
+     * holds fewer elements than this.
+     */
+    private int mergeThreshold;
+
+    /**
+     * Constructs an empty list with the specified
+     * {@link IntUnrolledLinkedList#nodeCapacity nodeCapacity}. For
+     * performance reasons <tt>nodeCapacity</tt> must be greater than or equal
+     * to 8.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public IntUnrolledLinkedList(int nodeCapacity) throws IllegalArgumentException {
+
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        this.nodeCapacity = nodeCapacity;
+        this.mergeThreshold = nodeCapacity;
+        firstNode = new Node();
+        lastNode = firstNode;
+
+    }
+
+    /**
+     * Constructs an empty list with
+     * {@link IntUnrolledLinkedList#nodeCapacity nodeCapacity} of 64. This is
+     * more than the 16 of <tt>UnrolledLinkedList</tt>: a node of 64
+     * <tt>int</tt> values takes 256 bytes, about as much as a node of 16
+     * boxed elements together with their <tt>Integer</tt> objects, and the
+     * cost of a node object and its array header is shared by four times as
+     * many elements.
+     */
+    public IntUnrolledLinkedList() {
+
+        this(64);
+
+    }
+
+    /**
+     * Returns the policy that determines how a full node is split when
+     * an element is inserted into it.
+     *
+     * @return the split policy of this list
+     */
+    public SplitPolicy getSplitPolicy() {
+
+        return splitPolicy;
+
+    }
+
+    /**
+     * Sets the policy that determines how a full node is split when
+     * an element is inserted into it. The default policy is
+     * {@link SplitPolicy#ADAPTIVE ADAPTIVE}.
+     *
+     * @param splitPolicy the new split policy
+     * @throws NullPointerException if <tt>splitPolicy</tt> is null
+     */
+    public void setSplitPolicy(SplitPolicy splitPolicy) {
+
+        if (splitPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.splitPolicy = splitPolicy;
+
+    }
+
+    /**
+     * Returns the number of elements below which a node is merged with one
+     * of its neighbours after a removal.
+     *
+     * @return the merge threshold of this list
+     */
+    public int getMergeThreshold() {
+
+        return mergeThreshold;
+
+    }
+
+    /**
+     * Sets the number of elements below which a node is merged with one of
+     * its neighbours after a removal, if the neighbour has room for its
+     * elements. The default is <tt>nodeCapacity</tt>, so every removal tries
+     * to merge; see {@link UnrolledLinkedList#setMergeThreshold(int)}.
+     * Empty nodes are always merged.
+     *
+     * @param mergeThreshold the new merge threshold
+     * @throws IllegalArgumentException if <tt>mergeThreshold</tt> is less
+     *         than 1 or greater than <tt>nodeCapacity</tt>
+     */
+    public void setMergeThreshold(int mergeThreshold) {
+
+        if (mergeThreshold < 1 || mergeThreshold > nodeCapacity) {
+            throw new IllegalArgumentException("mergeThreshold out of range");
+        }
+        this.mergeThreshold = mergeThreshold;
+
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+
+        return size;
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains no elements.
+     *
+     * @return <tt>true</tt> if this list contains no elements
+     */
+    @Override
+    public boolean isEmpty() {
+
+        return (size == 0);
+
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int getInt(int index) throws IndexOutOfBoundsException {
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        return position.node.elements[index - position.base];
+
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int setInt(int index, int element) throws IndexOutOfBoundsException {
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int ptr = index - position.base;
+        int el = node.elements[ptr];
+        node.elements[ptr] = element;
+        return el;
+
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt>
+     */
+    public boolean addInt(int e) {
+
+        insertIntoNode(lastNode, lastNode.numElements, e);
+        return true;
+
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     * Shifts the element currently at that position (if any) and any
+     * subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void addInt(int index, int element) throws IndexOutOfBoundsException {
+
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        insertIntoNode(position.node, index - position.base, element);
+
+    }
+
+    /**
+     * Removes the element at the specified position in this list.  Shifts any
+     * subsequent elements to the left (subtracts one from their indices).
+     * Returns the element that was removed from the list.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int removeIntAt(int index) throws IndexOutOfBoundsException {
+
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int ptr = index - position.base;
+        int element = node.elements[ptr];
+        removeFromNode(node, ptr);
+        return element;
+
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    public int indexOfInt(int o) {
+
+        int index = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            int[] elements = node.elements;
+            for (int ptr = 0; ptr < node.numElements; ptr++) {
+                if (elements[ptr] == o) {
+                    return index + ptr;
+                }
+            }
+            index += node.numElements;
+        }
+        return -1;
+
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    public int lastIndexOfInt(int o) {
+
+        int index = size;
+        for (Node node = lastNode; node != null; node = node.previous) {
+            int[] elements = node.elements;
+            index -= node.numElements;
+            for (int ptr = node.numElements - 1; ptr >= 0; ptr--) {
+                if (elements[ptr] == o) {
+                    return index + ptr;
+                }
+            }
+        }
+        return -1;
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     */
+    public boolean containsInt(int o) {
+
+        return (indexOfInt(o) != -1);
+
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list
+     * in proper sequence (from first to last element).
+     *
+     * @return an array containing all of the elements in this list
+     *         in proper sequence
+     */
+    public int[] toIntArray() {
+
+        int[] array = new int[size];
+        int p = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            System.arraycopy(node.elements, 0, array, p, node.numElements);
+            p += node.numElements;
+        }
+        return array;
+
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence
+     * that does not box the elements.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    public PrimitiveIterator.OfInt intIterator() {
+
+        return new IntIterator();
+
+    }
+
+    /**
+     * Removes all of the elements from this list.
+     */
+    @Override
+    public void clear() {
+
+        Node node = firstNode.next;
+        while (node != null) {
+            Node next = node.next;
+            node.next = null;
+            node.previous = null;
+            node = next;
+        }
+        lastNode = firstNode;
+        firstNode.numElements = 0;
+        firstNode.next = null;
+        size = 0;
+        modCount++;
+
+    }
+
+    // java.util.List methods working with boxed elements
+
+    @Override
+    public Integer get(int index) {
+
+        return getInt(index);
+
+    }
+
+    @Override
+    public Integer set(int index, Integer element) {
+
+        return setInt(index, element);
+
+    }
+
+    @Override
+    public boolean add(Integer e) {
+
+        return addInt(e);
+
+    }
+
+    @Override
+    public void add(int index, Integer element) {
+
+        addInt(index, element);
+
+    }
+
+    @Override
+    public Integer remove(int index) {
+
+        return removeIntAt(index);
+
+    }
+
+    @Override
+    public int indexOf(Object o) {
+
+        return (o instanceof Integer) ? indexOfInt((Integer) o) : -1;
+
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+
+        return (o instanceof Integer) ? lastIndexOfInt((Integer) o) : -1;
+
+    }
+
+    @Override
+    public boolean contains(Object o) {
+
+        return (indexOf(o) != -1);
+
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+
+        return new IntIterator();
+
+    }
+
+    /**
+     * Returns the node that contains the element at the specified position,
+     * together with the index of its first element. If <tt>index</tt> is
+     * equal to the size of this list, the last node is returned.
+     */
+    private NodePosition findNode(int index) {
+
+        Node node;
+        int p = 0;
+        if (size - index > index) {
+            node = firstNode;
+            while (p <= index - node.numElements) {
+                p += node.numElements;
+                node = node.next;
+            }
+        } else {
+            node = lastNode;
+            p = size;
+            while ((p -= node.numElements) > index) {
+                node = node.previous;
+            }
+        }
+        return new NodePosition(node, p);
+
+    }
+
+    private class Node {
+
+        /**
+         * The next node.
+         */
+        Node next;
+
+        /**
+         * The previous node.
+         */
+        Node previous;
+
+        /**
+         * The number of elements stored in this node.
+         */
+        int numElements = 0;
+
+        /**
+         * The array in which the elements are stored.
+         */
+        int[] elements;
+
+        /**
+         * Constructs a new node.
+         */
+        Node() {
+
+            elements = new int[nodeCapacity];
+
+        }
+
+    }
+
+    /**
+     * A node together with the index of its first element, as returned by
+     * {@link IntUnrolledLinkedList#findNode(int) findNode}.
+     */
+    private final class NodePosition {
+
+        final Node node;
+
+        final int base;
+
+        NodePosition(Node node, int base) {
+
+            this.node = node;
+            this.base = base;
+
+        }
+
+    }
+
+    private class IntIterator implements PrimitiveIterator.OfInt {
+
+        /**
+         * The node of the element to be returned by the next call to
+         * <tt>nextInt</tt>.
+         */
+        Node currentNode = firstNode;
+
+        /**
+         * The position of that element within <tt>currentNode</tt>.
+         */
+        int ptr = 0;
+
+        /**
+         * The index of that element.
+         */
+        int index = 0;
+
+        /**
+         * Whether the last returned element may be removed.
+         */
+        boolean canRemove = false;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+
+            return (index < size);
+
+        }
+
+        @Override
+        public int nextInt() {
+
+            checkForModification();
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            if (ptr == currentNode.numElements) {
+                currentNode = currentNode.next;
+                ptr = 0;
+            }
+            index++;
+            canRemove = true;
+            return currentNode.elements[ptr++];
+
+        }
+
+        @Override
+        public void remove() {
+
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            checkForModification();
+            Node node = currentNode;
+            int removed = ptr - 1;
+            removeFromNode(node, removed);
+            if (node.previous != null && node.previous.next != node) {
+                // the node has been merged into the previous one
+                ptr = node.previous.numElements - node.numElements + removed;
+                currentNode = node.previous;
+            } else {
+                ptr = removed;
+            }
+            index--;
+            canRemove = false;
+            expectedModCount = modCount;
+
+        }
+
+        private void checkForModification() {
+
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+        }
+
+    }
+
+    /**
+     * Insert an element into the specified node. If the node is already full,
+     * a new node will be created, and the elements are divided between the
+     * two nodes as the {@link #getSplitPolicy() split policy} prescribes.
+     *
+     * @param node
+     * @param ptr the position at which the element should be inserted
+     *            into the <tt>node.elements<tt> array
+     * @param element the element to be inserted
+     */
+    private void insertIntoNode(Node node, int ptr, int element) {
+
+        // if the node is full
+        if (node.numElements == nodeCapacity) {
+            SplitPolicy policy = splitPolicy;
+            if (policy == SplitPolicy.ADAPTIVE) {
+                if (node == lastNode && ptr == node.numElements) {
+                    policy = SplitPolicy.APPEND;
+                } else if (node == firstNode && ptr == 0) {
+                    policy = SplitPolicy.PREPEND;
+                } else {
+                    policy = SplitPolicy.BALANCED;
+                }
+            }
+            Node newNode = new Node();
+            if (policy == SplitPolicy.PREPEND) {
+                // move the elements before the insertion point to a new
+                // node in front of this one
+                int elementsToMove = ptr;
+                System.arraycopy(node.elements, 0, newNode.elements, 0, elementsToMove);
+                System.arraycopy(node.elements, elementsToMove, node.elements, 0,
+                        node.numElements - elementsToMove);
+                node.numElements -= elementsToMove;
+                newNode.numElements = elementsToMove;
+                newNode.next = node;
+                newNode.previous = node.previous;
+                if (node.previous != null) {
+                    node.previous.next = newNode;
+                }
+                node.previous = newNode;
+                if (node == firstNode) {
+                    firstNode = newNode;
+                }
+                // the element goes to the front of the original node,
+                // unless no elements have been moved
+                if (elementsToMove == 0) {
+                    node = newNode;
+                }
+                ptr = 0;
+            } else {
+                int elementsToMove;
+                if (policy == SplitPolicy.APPEND) {
+                    // move the elements after the insertion point
+                    elementsToMove = node.numElements - ptr;
+                } else {
+                    // move half of the elements
+                    elementsToMove = nodeCapacity / 2;
+                }
+                int startIndex = node.numElements - elementsToMove;
+                System.arraycopy(node.elements, startIndex, newNode.elements, 0, elementsToMove);
+                node.numElements = startIndex;
+                newNode.numElements = elementsToMove;
+                // insert the new node into the list
+                newNode.next = node.next;
+                newNode.previous = node;
+                if (node.next != null) {
+                    node.next.previous = newNode;
+                }
+                node.next = newNode;
+                if (node == lastNode) {
+                    lastNode = newNode;
+                }
+                // check whether the element should be inserted into
+                // the original node or into the new node
+                if (ptr > node.numElements || elementsToMove == 0) {
+                    ptr -= node.numElements;
+                    node = newNode;
+                }
+            }
+        }
+        System.arraycopy(node.elements, ptr, node.elements, ptr + 1, node.numElements - ptr);
+        node.elements[ptr] = element;
+        node.numElements++;
+        size++;
+        modCount++;
+
+    }
+
+    /**
+     * Removes an element from the specified node. If the node is left with
+     * fewer elements than the {@link #getMergeThreshold() merge threshold},
+     * it is merged with a neighbour that has room for its elements.
+     *
+     * @param node the node from which an element should be removed
+     * @param ptr the index of the element to be removed within
+     * the <tt>node.elements<tt> array
+     */
+    private void removeFromNode(Node node, int ptr) {
+
+        node.numElements--;
+        System.arraycopy(node.elements, ptr + 1, node.elements, ptr, node.numElements - ptr);
+        if (node.numElements < mergeThreshold) {
+            if (node.next != null && node.next.numElements + node.numElements <= nodeCapacity) {
+                mergeWithNextNode(node);
+            } else if (node.previous != null && node.previous.numElements + node.numElements <= nodeCapacity) {
+                mergeWithNextNode(node.previous);
+            }
+        }
+        size--;
+        modCount++;
+
+    }
+
+    /**
+     * This method does merge the specified node with the next node. The
+     * next node keeps its element count and its link to the specified node,
+     * which lets iterators find their position again.
+     *
+     * @param node the node which should be merged with the next node
+     */
+    private void mergeWithNextNode(Node node) {
+
+        Node next = node.next;
+        System.arraycopy(next.elements, 0, node.elements, node.numElements, next.numElements);
+        node.numElements += next.numElements;
+        if (next.next != null) {
+            next.next.previous = node;
+        }
+        node.next = next.next;
+        if (next == lastNode) {
+            lastNode = node;
+        }
+
+    }
+
+}
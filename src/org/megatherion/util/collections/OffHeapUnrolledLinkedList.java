@@ -0,0 +1,900 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An unrolled linked list that stores its elements outside of the Java heap.
+ * Every element is encoded into a fixed number of bytes by a {@link Codec},
+ * and every node keeps its elements in a slab of direct memory. The nodes
+ * are split and merged the same way as the nodes of
+ * {@link UnrolledLinkedList}, but the garbage collector only sees the node
+ * headers, not the elements.
+ *
+ * <p>The slabs are cut out of larger direct buffers (blocks), and slabs of
+ * nodes that are merged away are reused for new nodes. The memory is
+ * released when {@link #close() close} is called; after that the list can
+ * no longer be used.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * The iterators returned by this class are <i>fail-fast</i>, just like the
+ * ones of {@link UnrolledLinkedList}.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see UnrolledLinkedList
+ */
+public class OffHeapUnrolledLinkedList<E> extends AbstractList<E> implements Closeable {
+
+    /**
+     * Converts elements to and from a fixed number of bytes.
+     *
+     * @param <E> the type of the elements
+     */
+    public interface Codec<E> {
+
+        /**
+         * Encodes <tt>int</tt> values in 4 bytes. <tt>null</tt> is not supported.
+         */
+        Codec<Integer> INTEGER = new Codec<Integer>() {
+
+            public int width() {
+                return 4;
+            }
+
+            public void write(ByteBuffer buffer, int offset, Integer element) {
+                buffer.putInt(offset, element);
+            }
+
+            public Integer read(ByteBuffer buffer, int offset) {
+                return buffer.getInt(offset);
+            }
+
+        };
+
+        /**
+         * Encodes <tt>long</tt> values in 8 bytes. <tt>null</tt> is not supported.
+         */
+        Codec<Long> LONG = new Codec<Long>() {
+
+            public int width() {
+                return 8;
+            }
+
+            public void write(ByteBuffer buffer, int offset, Long element) {
+                buffer.putLong(offset, element);
+            }
+
+            public Long read(ByteBuffer buffer, int offset) {
+                return buffer.getLong(offset);
+            }
+
+        };
+
+        /**
+         * Encodes <tt>double</tt> values in 8 bytes. <tt>null</tt> is not supported.
+         */
+        Codec<Double> DOUBLE = new Codec<Double>() {
+
+            public int width() {
+                return 8;
+            }
+
+            public void write(ByteBuffer buffer, int offset, Double element) {
+                buffer.putDouble(offset, element);
+            }
+
+            public Double read(ByteBuffer buffer, int offset) {
+                return buffer.getDouble(offset);
+            }
+
+        };
+
+        /**
+         * Returns the number of bytes an encoded element occupies.
+         *
+         * @return the number of bytes an encoded element occupies
+         */
+        int width();
+
+        /**
+         * Encodes an element into <tt>width()</tt> bytes of the buffer,
+         * starting at the specified offset. The position of the buffer must
+         * not be relied on.
+         *
+         * @param buffer the buffer to write into
+         * @param offset the offset of the first byte
+         * @param element the element to be encoded
+         */
+        void write(ByteBuffer buffer, int offset, E element);
+
+        /**
+         * Decodes an element from <tt>width()</tt> bytes of the buffer,
+         * starting at the specified offset. The position of the buffer must
+         * not be relied on.
+         *
+         * @param buffer the buffer to read from
+         * @param offset the offset of the first byte
+         * @return the decoded element
+         */
+        E read(ByteBuffer buffer, int offset);
+
+    }
+
+    /**
+     * The number of node slabs that are allocated together in a block.
+     */
+    private static final int SLABS_PER_BLOCK = 64;
+
+    /**
+     * The codec of the elements.
+     */
+    private final Codec<E> codec;
+
+    /**
+     * The number of bytes an encoded element occupies.
+     */
+    private final int width;
+
+    /**
+     * The maximum number of elements that can be stored in a single node.
+     */
+    private final int nodeCapacity;
+
+    /**
+     * The current size of this list.
+     */
+    private int size = 0;
+
+    /**
+     * The first node of this list.
+     */
+    private Node firstNode;
+
+    /**
+     * The last node of this list.
+     */
+    private Node lastNode;
+
+    /**
+     * The direct buffers from which the slabs are cut.
+     */
+    private ArrayList<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+
+    /**
+     * The number of slabs that have been cut from the last block.
+     */
+    private int slabsUsedInBlock = SLABS_PER_BLOCK;
+
+    /**
+     * Slabs that are not used by any node.
+     */
+    private ArrayList<ByteBuffer> freeSlabs = new ArrayList<ByteBuffer>();
+
+    /**
+     * A heap buffer through which bytes are moved between and within slabs.
+     */
+    private byte[] scratch;
+
+    /**
+     * A heap buffer into which an element is encoded before the list is
+     * modified, so that a codec that rejects the element leaves the list
+     * unchanged.
+     */
+    private ByteBuffer encoded;
+
+    /**
+     * Whether the memory of this list has been released.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructs an empty list with the specified codec and
+     * {@link OffHeapUnrolledLinkedList#nodeCapacity nodeCapacity}. For
+     * performance reasons <tt>nodeCapacity</tt> must be greater than or equal
+     * to 8.
+     *
+     * @param codec the codec of the elements
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8,
+     *         or a node would not fit into a direct buffer
+     * @throws NullPointerException if <tt>codec</tt> is null
+     */
+    public OffHeapUnrolledLinkedList(Codec<E> codec, int nodeCapacity) throws IllegalArgumentException {
+
+        if (codec == null) {
+            throw new NullPointerException();
+        }
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        if (codec.width() <= 0) {
+            throw new IllegalArgumentException("codec.width() <= 0");
+        }
+        if ((long) nodeCapacity * codec.width() * SLABS_PER_BLOCK > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("nodeCapacity * codec.width() is too large");
+        }
+        this.codec = codec;
+        this.width = codec.width();
+        this.nodeCapacity = nodeCapacity;
+        scratch = new byte[nodeCapacity * width];
+        encoded = ByteBuffer.allocate(width).order(ByteOrder.nativeOrder());
+        firstNode = new Node();
+        lastNode = firstNode;
+
+    }
+
+    /**
+     * Constructs an empty list with the specified codec and
+     * {@link OffHeapUnrolledLinkedList#nodeCapacity nodeCapacity} of 256.
+     *
+     * @param codec the codec of the elements
+     * @throws NullPointerException if <tt>codec</tt> is null
+     */
+    public OffHeapUnrolledLinkedList(Codec<E> codec) {
+
+        this(codec, 256);
+
+    }
+
+    /**
+     * Returns the number of elements in this list. A closed list is empty.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+
+        return size;
+
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws IllegalStateException if this list has been closed
+     */
+    public E get(int index) throws IndexOutOfBoundsException {
+
+        ensureOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        return codec.read(position.node.slab, (index - position.base) * width);
+
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public E set(int index, E element) {
+
+        ensureOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        int offset = (index - position.base) * width;
+        E el = codec.read(position.node.slab, offset);
+        encode(element);
+        store(position.node.slab, offset);
+        return el;
+
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link java.util.Collection#add})
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public boolean add(E e) {
+
+        ensureOpen();
+        insertIntoNode(lastNode, lastNode.numElements, e);
+        return true;
+
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     * Shifts the element currently at that position (if any) and any
+     * subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public void add(int index, E element) throws IndexOutOfBoundsException {
+
+        ensureOpen();
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        insertIntoNode(position.node, index - position.base, element);
+
+    }
+
+    /**
+     * Removes the element at the specified position in this list.  Shifts any
+     * subsequent elements to the left (subtracts one from their indices).
+     * Returns the element that was removed from the list.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public E remove(int index) throws IndexOutOfBoundsException {
+
+        ensureOpen();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int ptr = index - position.base;
+        E element = codec.read(node.slab, ptr * width);
+        removeFromNode(node, ptr);
+        return element;
+
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     * The elements are compared after decoding them.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public int indexOf(Object o) {
+
+        ensureOpen();
+        int index = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            for (int ptr = 0; ptr < node.numElements; ptr++) {
+                E e = codec.read(node.slab, ptr * width);
+                if (o == null ? e == null : o.equals(e)) {
+                    return index + ptr;
+                }
+            }
+            index += node.numElements;
+        }
+        return -1;
+
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     * The elements are compared after decoding them.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+
+        ensureOpen();
+        int index = size;
+        for (Node node = lastNode; node != null; node = node.previous) {
+            index -= node.numElements;
+            for (int ptr = node.numElements - 1; ptr >= 0; ptr--) {
+                E e = codec.read(node.slab, ptr * width);
+                if (o == null ? e == null : o.equals(e)) {
+                    return index + ptr;
+                }
+            }
+        }
+        return -1;
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public boolean contains(Object o) {
+
+        return (indexOf(o) != -1);
+
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public Iterator<E> iterator() {
+
+        ensureOpen();
+        return new OffHeapIterator();
+
+    }
+
+    /**
+     * Removes all of the elements from this list. The slabs of the removed
+     * nodes are kept for reuse; call {@link #close() close} to release the
+     * memory.
+     *
+     * @throws IllegalStateException if this list has been closed
+     */
+    @Override
+    public void clear() {
+
+        ensureOpen();
+        Node node = firstNode.next;
+        while (node != null) {
+            Node next = node.next;
+            freeSlabs.add(node.slab);
+            node.next = null;
+            node.previous = null;
+            node.slab = null;
+            node = next;
+        }
+        lastNode = firstNode;
+        firstNode.numElements = 0;
+        firstNode.next = null;
+        size = 0;
+        modCount++;
+
+    }
+
+    /**
+     * Releases the direct memory of this list. The list becomes empty and
+     * all further operations on it, except <tt>size</tt>, <tt>isEmpty</tt>
+     * and <tt>close</tt>, throw an <tt>IllegalStateException</tt>. Calling
+     * this method more than once has no effect.
+     */
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        firstNode = null;
+        lastNode = null;
+        size = 0;
+        modCount++;
+        freeSlabs = null;
+        for (ByteBuffer block : blocks) {
+            release(block);
+        }
+        blocks = null;
+
+    }
+
+    private void ensureOpen() {
+
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+
+    }
+
+    /**
+     * Returns the node that contains the element at the specified position,
+     * together with the index of its first element. If <tt>index</tt> is
+     * equal to the size of this list, the last node is returned.
+     */
+    private NodePosition findNode(int index) {
+
+        Node node;
+        int p = 0;
+        if (size - index > index) {
+            node = firstNode;
+            while (p <= index - node.numElements) {
+                p += node.numElements;
+                node = node.next;
+            }
+        } else {
+            node = lastNode;
+            p = size;
+            while ((p -= node.numElements) > index) {
+                node = node.previous;
+            }
+        }
+        return new NodePosition(node, p);
+
+    }
+
+    /**
+     * Returns an unused slab, allocating a new block if necessary.
+     */
+    private ByteBuffer allocateSlab() {
+
+        if (!freeSlabs.isEmpty()) {
+            return freeSlabs.remove(freeSlabs.size() - 1);
+        }
+        int slabSize = nodeCapacity * width;
+        if (slabsUsedInBlock == SLABS_PER_BLOCK) {
+            blocks.add(ByteBuffer.allocateDirect(slabSize * SLABS_PER_BLOCK));
+            slabsUsedInBlock = 0;
+        }
+        ByteBuffer block = blocks.get(blocks.size() - 1).duplicate();
+        block.position(slabsUsedInBlock * slabSize);
+        block.limit(block.position() + slabSize);
+        slabsUsedInBlock++;
+        return block.slice().order(ByteOrder.nativeOrder());
+
+    }
+
+    /**
+     * Encodes an element into the {@link #encoded encoded} buffer.
+     *
+     * @param element the element to be encoded
+     */
+    private void encode(E element) {
+
+        codec.write(encoded, 0, element);
+
+    }
+
+    /**
+     * Copies the element in the {@link #encoded encoded} buffer into a slab.
+     *
+     * @param slab the slab
+     * @param offset the position of the element in the slab, in bytes
+     */
+    private void store(ByteBuffer slab, int offset) {
+
+        slab.position(offset);
+        slab.put(encoded.array(), 0, width);
+
+    }
+
+    /**
+     * Copies <tt>count</tt> elements between slabs, which may be the same
+     * slab and may overlap.
+     */
+    private void move(ByteBuffer src, int srcPtr, ByteBuffer dst, int dstPtr, int count) {
+
+        int length = count * width;
+        src.position(srcPtr * width);
+        src.get(scratch, 0, length);
+        dst.position(dstPtr * width);
+        dst.put(scratch, 0, length);
+
+    }
+
+    private class Node {
+
+        /**
+         * The next node.
+         */
+        Node next;
+
+        /**
+         * The previous node.
+         */
+        Node previous;
+
+        /**
+         * The number of elements stored in this node.
+         */
+        int numElements = 0;
+
+        /**
+         * The direct memory in which the encoded elements are stored.
+         */
+        ByteBuffer slab;
+
+        /**
+         * Constructs a new node.
+         */
+        Node() {
+
+            slab = allocateSlab();
+
+        }
+
+    }
+
+    /**
+     * A node together with the index of its first element, as returned by
+     * {@link OffHeapUnrolledLinkedList#findNode(int) findNode}.
+     */
+    private final class NodePosition {
+
+        final Node node;
+
+        final int base;
+
+        NodePosition(Node node, int base) {
+
+            this.node = node;
+            this.base = base;
+
+        }
+
+    }
+
+    private class OffHeapIterator implements Iterator<E> {
+
+        /**
+         * The node of the element to be returned by the next call to
+         * <tt>next</tt>.
+         */
+        Node currentNode = firstNode;
+
+        /**
+         * The position of that element within <tt>currentNode</tt>.
+         */
+        int ptr = 0;
+
+        /**
+         * The index of that element.
+         */
+        int index = 0;
+
+        /**
+         * Whether the last returned element may be removed.
+         */
+        boolean canRemove = false;
+
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+
+            return (index < size);
+
+        }
+
+        @Override
+        public E next() {
+
+            checkForModification();
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            if (ptr == currentNode.numElements) {
+                currentNode = currentNode.next;
+                ptr = 0;
+            }
+            index++;
+            canRemove = true;
+            return codec.read(currentNode.slab, (ptr++) * width);
+
+        }
+
+        @Override
+        public void remove() {
+
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            checkForModification();
+            Node node = currentNode;
+            int removed = ptr - 1;
+            removeFromNode(node, removed);
+            if (node.previous != null && node.previous.next != node) {
+                // the node has been merged into the previous one
+                ptr = node.previous.numElements - node.numElements + removed;
+                currentNode = node.previous;
+            } else {
+                ptr = removed;
+            }
+            index--;
+            canRemove = false;
+            expectedModCount = modCount;
+
+        }
+
+        private void checkForModification() {
+
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+        }
+
+    }
+
+    /**
+     * Insert an element into the specified node. If the node is already full,
+     * a new node will be created: inserting at the end of the last node
+     * starts a new, empty node, inserting at the start of the first node
+     * starts a new node in front of it, and otherwise half of the elements
+     * are moved to a new node after the full one.
+     *
+     * @param node
+     * @param ptr the position at which the element should be inserted
+     *            into the node
+     * @param element the element to be inserted
+     */
+    private void insertIntoNode(Node node, int ptr, E element) {
+
+        // encode the element before anything is moved
+        encode(element);
+        // if the node is full
+        if (node.numElements == nodeCapacity) {
+            Node newNode = new Node();
+            if (node == firstNode && ptr == 0) {
+                // start a new node in front of the first one
+                newNode.next = node;
+                node.previous = newNode;
+                firstNode = newNode;
+                node = newNode;
+            } else {
+                int elementsToMove;
+                if (node == lastNode && ptr == node.numElements) {
+                    elementsToMove = 0;
+                } else {
+                    elementsToMove = nodeCapacity / 2;
+                }
+                int startIndex = node.numElements - elementsToMove;
+                move(node.slab, startIndex, newNode.slab, 0, elementsToMove);
+                node.numElements = startIndex;
+                newNode.numElements = elementsToMove;
+                // insert the new node into the list
+                newNode.next = node.next;
+                newNode.previous = node;
+                if (node.next != null) {
+                    node.next.previous = newNode;
+                }
+                node.next = newNode;
+                if (node == lastNode) {
+                    lastNode = newNode;
+                }
+                // check whether the element should be inserted into
+                // the original node or into the new node
+                if (ptr > node.numElements || elementsToMove == 0) {
+                    ptr -= node.numElements;
+                    node = newNode;
+                }
+            }
+        }
+        if (ptr < node.numElements) {
+            move(node.slab, ptr, node.slab, ptr + 1, node.numElements - ptr);
+        }
+        store(node.slab, ptr * width);
+        node.numElements++;
+        size++;
+        modCount++;
+
+    }
+
+    /**
+     * Removes an element from the specified node.
+     *
+     * @param node the node from which an element should be removed
+     * @param ptr the index of the element to be removed within the node
+     */
+    private void removeFromNode(Node node, int ptr) {
+
+        node.numElements--;
+        if (ptr < node.numElements) {
+            move(node.slab, ptr + 1, node.slab, ptr, node.numElements - ptr);
+        }
+        if (node.next != null && node.next.numElements + node.numElements <= nodeCapacity) {
+            mergeWithNextNode(node);
+        } else if (node.previous != null && node.previous.numElements + node.numElements <= nodeCapacity) {
+            mergeWithNextNode(node.previous);
+        }
+        size--;
+        modCount++;
+
+    }
+
+    /**
+     * This method does merge the specified node with the next node and
+     * recycles the slab of the next node. The next node keeps its element
+     * count and its link to the specified node, which lets iterators find
+     * their position again.
+     *
+     * @param node the node which should be merged with the next node
+     */
+    private void mergeWithNextNode(Node node) {
+
+        Node next = node.next;
+        move(next.slab, 0, node.slab, node.numElements, next.numElements);
+        node.numElements += next.numElements;
+        if (next.next != null) {
+            next.next.previous = node;
+        }
+        node.next = next.next;
+        if (next == lastNode) {
+            lastNode = node;
+        }
+        freeSlabs.add(next.slab);
+        next.slab = null;
+
+    }
+
+    /**
+     * The method that frees the memory of a direct buffer, or <tt>null</tt>
+     * if it is not accessible on this platform.
+     */
+    private static final Method CLEANER;
+
+    /**
+     * The object on which {@link #CLEANER CLEANER} is invoked.
+     */
+    private static final Object CLEANER_TARGET;
+
+    static {
+        Method cleaner = null;
+        Object target = null;
+        try {
+            // Java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            cleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            target = theUnsafe.get(null);
+        } catch (Exception e) {
+            cleaner = null;
+        }
+        CLEANER = cleaner;
+        CLEANER_TARGET = target;
+    }
+
+    /**
+     * Frees the memory of a direct buffer immediately. If that is not
+     * possible on this platform, the memory is freed when the buffer is
+     * garbage collected.
+     */
+    private static void release(ByteBuffer buffer) {
+
+        try {
+            if (CLEANER != null) {
+                CLEANER.invoke(CLEANER_TARGET, buffer);
+            } else {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // left to the garbage collector
+        }
+
+    }
+
+}
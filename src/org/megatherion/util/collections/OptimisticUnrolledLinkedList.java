@@ -0,0 +1,784 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe {@link UnrolledLinkedList} for lists that are read by many
+ * threads and modified rarely. Reads do not take a lock at all: <tt>get</tt>,
+ * <tt>indexOf</tt>, <tt>lastIndexOf</tt>, <tt>contains</tt>, <tt>size</tt>
+ * and the snapshots used for iteration run under an optimistic stamp of a
+ * {@link StampedLock}, which is validated at every node and once more at the
+ * end. Only when a writer got in the way is the read repeated, and after a
+ * few failed attempts it is done under the read lock. Modifications take the
+ * write lock, so splits and merges are never observed half done by a read
+ * that succeeds.
+ *
+ * <p>Since an optimistic read may see the list in an inconsistent state, the
+ * <tt>equals</tt> method of the elements may be called with elements that are
+ * no longer, or not yet, in the list, and any exception it throws during such
+ * a read is ignored. The elements should be immutable and their
+ * <tt>equals</tt> method should have no side effects.
+ *
+ * <p>The iterators returned by this class iterate over a snapshot of the
+ * list, taken when the iterator is created. They never throw
+ * {@link java.util.ConcurrentModificationException
+ * ConcurrentModificationException} and do not support modification. The
+ * views returned by <tt>subList</tt> can be modified through their
+ * positional methods and <tt>clear</tt>, which removes the range at once
+ * with {@link #removeRange(int, int) removeRange}.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see UnrolledLinkedList
+ * @see ConcurrentUnrolledLinkedList
+ */
+public class OptimisticUnrolledLinkedList<E> extends AbstractList<E> implements List<E> {
+
+    /**
+     * The number of times a read is attempted optimistically before it falls
+     * back to the read lock.
+     */
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    /**
+     * The list that holds the elements. It is not indexed, because the node
+     * index cannot be searched safely while it is being restructured.
+     */
+    private final UnrolledLinkedList<E> list;
+
+    /**
+     * The lock that guards {@link #list list}.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Constructs an empty list with the specified node capacity. For
+     * performance reasons <tt>nodeCapacity</tt> must be greater than or
+     * equal to 8.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public OptimisticUnrolledLinkedList(int nodeCapacity) throws IllegalArgumentException {
+
+        list = new UnrolledLinkedList<E>(nodeCapacity);
+
+    }
+
+    /**
+     * Constructs an empty list with a node capacity of 16.
+     */
+    public OptimisticUnrolledLinkedList() {
+
+        this(16);
+
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    @Override
+    public int size() {
+
+        long stamp = lock.tryOptimisticRead();
+        int size = list.size();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = list.size();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E get(final int index) {
+
+        if (index >= 0) {
+            Reader reader = new Reader() {
+
+                int remaining;
+
+                void reset() {
+
+                    remaining = index;
+                    found = false;
+
+                }
+
+                boolean read(Object[] elements, int from, int to) {
+
+                    if (remaining < to - from) {
+                        element = elements[from + remaining];
+                        found = true;
+                        return false;
+                    }
+                    remaining -= to - from;
+                    return true;
+
+                }
+
+            };
+            if (readOptimistically(reader)) {
+                if (reader.found) {
+                    return (E) reader.element;
+                }
+                throw new IndexOutOfBoundsException();
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            return list.get(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    @Override
+    public int indexOf(final Object o) {
+
+        Reader reader = new Reader() {
+
+            int base;
+
+            void reset() {
+
+                base = 0;
+                foundIndex = -1;
+
+            }
+
+            boolean read(Object[] elements, int from, int to) {
+
+                for (int i = from; i < to; i++) {
+                    if (o == null ? elements[i] == null : o.equals(elements[i])) {
+                        foundIndex = base + i - from;
+                        return false;
+                    }
+                }
+                base += to - from;
+                return true;
+
+            }
+
+        };
+        read(reader);
+        return reader.foundIndex;
+
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the specified element in
+     *         this list, or -1 if this list does not contain the element
+     */
+    @Override
+    public int lastIndexOf(final Object o) {
+
+        Reader reader = new Reader() {
+
+            int base;
+
+            void reset() {
+
+                base = 0;
+                foundIndex = -1;
+
+            }
+
+            boolean read(Object[] elements, int from, int to) {
+
+                for (int i = from; i < to; i++) {
+                    if (o == null ? elements[i] == null : o.equals(elements[i])) {
+                        foundIndex = base + i - from;
+                    }
+                }
+                base += to - from;
+                return true;
+
+            }
+
+        };
+        read(reader);
+        return reader.foundIndex;
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     */
+    @Override
+    public boolean contains(Object o) {
+
+        return indexOf(o) != -1;
+
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in proper
+     * sequence. The array is a consistent snapshot of the list.
+     *
+     * @return an array containing all of the elements in this list
+     */
+    @Override
+    public Object[] toArray() {
+
+        Reader reader = new Reader() {
+
+            int size;
+
+            void reset() {
+
+                elements = new Object[list.size()];
+                size = 0;
+
+            }
+
+            boolean read(Object[] nodeElements, int from, int to) {
+
+                System.arraycopy(nodeElements, from, elements, size, to - from);
+                size += to - from;
+                return true;
+
+            }
+
+            boolean complete() {
+
+                return size == elements.length;
+
+            }
+
+        };
+        read(reader);
+        return reader.elements;
+
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in proper
+     * sequence; the runtime type of the returned array is that of the
+     * specified array. The array is a consistent snapshot of the list.
+     *
+     * @param a the array into which the elements of the list are to be
+     *          stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose
+     * @return an array containing the elements of the list
+     * @throws ArrayStoreException if the runtime type of the specified array
+     *         is not a supertype of the runtime type of every element in
+     *         this list
+     * @throws NullPointerException if the specified array is null
+     */
+    @Override
+    public <T> T[] toArray(T[] a) {
+
+        Object[] elements = toArray();
+        if (a.length < elements.length) {
+            return (T[]) Arrays.copyOf(elements, elements.length, a.getClass());
+        }
+        System.arraycopy(elements, 0, a, 0, elements.length);
+        if (a.length > elements.length) {
+            a[elements.length] = null;
+        }
+        return a;
+
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this list.
+     * The iterator does not support <tt>remove</tt>.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+
+        return listIterator(0);
+
+    }
+
+    /**
+     * Returns a read-only list iterator over a snapshot of the elements in
+     * this list, starting at the specified position.
+     *
+     * @param index index of the first element to be returned from the
+     *        list iterator (by a call to <tt>next</tt>)
+     * @return a list iterator over a snapshot of the elements in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    @Override
+    public ListIterator<E> listIterator(int index) {
+
+        List<E> snapshot = (List<E>) Arrays.asList(toArray());
+        return Collections.unmodifiableList(snapshot).listIterator(index);
+
+    }
+
+    /**
+     * Performs the given action for each element of a snapshot of this list.
+     *
+     * @param action the action to be performed for each element
+     * @throws NullPointerException if the specified action is null
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        for (Object e : toArray()) {
+            action.accept((E) e);
+        }
+
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @param index index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E set(int index, E element) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.set(index, element);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return <tt>true</tt> (as specified by {@link Collection#add})
+     */
+    @Override
+    public boolean add(E e) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.add(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    @Override
+    public void add(int index, E element) {
+
+        long stamp = lock.writeLock();
+        try {
+            list.add(index, element);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end of
+     * this list, in the order that they are returned by the collection's
+     * iterator.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+
+        // copy the collection before locking, it may be this list
+        List<Object> elements = Arrays.asList(c.toArray());
+        long stamp = lock.writeLock();
+        try {
+            return list.addAll((Collection<? extends E>) elements);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position.
+     *
+     * @param index index at which to insert the first element from the
+     *              specified collection
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+
+        List<Object> elements = Arrays.asList(c.toArray());
+        long stamp = lock.writeLock();
+        try {
+            return list.addAll(index, (Collection<? extends E>) elements);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     *
+     * @param index the index of the element to be removed
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E remove(int index) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.remove(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.
+     *
+     * @param o element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    @Override
+    public boolean remove(Object o) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.remove(o);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes all of the elements of this list that satisfy the given
+     * predicate.
+     *
+     * @param filter a predicate which returns <tt>true</tt> for elements to be
+     *        removed
+     * @return <tt>true</tt> if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.removeIf(filter);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes from this list all of its elements that are contained in the
+     * specified collection.
+     *
+     * @param c collection containing elements to be removed from this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.removeAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Retains only the elements in this list that are contained in the
+     * specified collection.
+     *
+     * @param c collection containing elements to be retained in this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+
+        long stamp = lock.writeLock();
+        try {
+            return list.retainAll(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Replaces each element of this list with the result of applying the
+     * operator to that element.
+     *
+     * @param operator the operator to apply to each element
+     * @throws NullPointerException if the specified operator is null
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+
+        long stamp = lock.writeLock();
+        try {
+            list.replaceAll(operator);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Sorts this list according to the order induced by the specified
+     * {@link Comparator}.
+     *
+     * @param c the {@code Comparator} used to compare list elements.
+     *          A {@code null} value indicates that the elements'
+     *          {@linkplain Comparable natural ordering} should be used
+     * @throws ClassCastException if the list contains elements that are not
+     *         <i>mutually comparable</i> using the specified comparator
+     */
+    @Override
+    public void sort(Comparator<? super E> c) {
+
+        long stamp = lock.writeLock();
+        try {
+            list.sort(c);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes all of the elements from this list.
+     */
+    @Override
+    public void clear() {
+
+        long stamp = lock.writeLock();
+        try {
+            list.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <tt>fromIndex</tt>, inclusive, and <tt>toIndex</tt>, exclusive, under
+     * the write lock.
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> or
+     *         <tt>toIndex</tt> is out of range
+     *         <tt>(fromIndex &lt; 0 || toIndex &gt; size() ||
+     *         toIndex &lt; fromIndex)</tt>
+     * @see UnrolledLinkedList#removeRange(int, int)
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+
+        long stamp = lock.writeLock();
+        try {
+            list.removeRange(fromIndex, toIndex);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+    }
+
+    /**
+     * Runs a reader over the nodes of the list. The read is attempted under
+     * an optimistic stamp up to {@link #OPTIMISTIC_ATTEMPTS} times, and then
+     * done under the read lock.
+     *
+     * @param reader the reader
+     */
+    private void read(Reader reader) {
+
+        if (readOptimistically(reader)) {
+            return;
+        }
+        long stamp = lock.readLock();
+        try {
+            reader.stamp = stamp;
+            reader.reset();
+            list.visitNodes(reader);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+    }
+
+    /**
+     * Runs a reader over the nodes of the list under an optimistic stamp,
+     * up to {@link #OPTIMISTIC_ATTEMPTS} times.
+     *
+     * @param reader the reader
+     * @return <tt>true</tt> if the reader completed and the stamp was still
+     *         valid afterwards, <tt>false</tt> if the read must be done under
+     *         the read lock
+     */
+    private boolean readOptimistically(Reader reader) {
+
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0L) {
+                // write locked
+                continue;
+            }
+            reader.stamp = stamp;
+            try {
+                reader.reset();
+                list.visitNodes(reader);
+                if (reader.complete() && lock.validate(stamp)) {
+                    return true;
+                }
+            } catch (RuntimeException e) {
+                // the list has been modified while it was read
+            }
+        }
+        return false;
+
+    }
+
+    /**
+     * A read that is carried out node by node. The stamp is validated before
+     * every node is read, so a read that races with a writer stops at the
+     * next node instead of following a node chain that may be inconsistent.
+     */
+    private abstract class Reader implements UnrolledLinkedList.NodeVisitor {
+
+        /**
+         * The optimistic stamp of the current attempt.
+         */
+        long stamp;
+
+        /**
+         * The element that has been found, if any.
+         */
+        Object element;
+
+        /**
+         * <tt>true</tt> if an element has been found.
+         */
+        boolean found;
+
+        /**
+         * The index that has been found, if any.
+         */
+        int foundIndex;
+
+        /**
+         * The elements that have been read, if any.
+         */
+        Object[] elements;
+
+        /**
+         * Prepares a new attempt.
+         */
+        abstract void reset();
+
+        /**
+         * Reads the elements of a node.
+         *
+         * @return <tt>false</tt> if no more nodes need to be read
+         */
+        abstract boolean read(Object[] elements, int from, int to);
+
+        /**
+         * Checks whether an optimistic read has produced a plausible result.
+         */
+        boolean complete() {
+
+            return true;
+
+        }
+
+        public final boolean visit(Object[] elements, int from, int to) {
+
+            return lock.validate(stamp) && read(elements, from, to);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,647 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, persistent unrolled list. Like {@link UnrolledLinkedList} it
+ * stores its elements in nodes of up to <tt>nodeCapacity</tt> elements, but
+ * the nodes are kept in a balanced tree instead of a linked chain, and they
+ * are never modified once they are part of a list. The methods that
+ * "modify" the list, {@link #plus(Object) plus}, {@link #plus(int, Object)
+ * plus}, {@link #with(int, Object) with} and {@link #minus(int) minus},
+ * return a new list that shares all nodes with this one except the node
+ * that has been changed, which is copied, and the path from the root of the
+ * tree to that node. They take O(<tt>nodeCapacity</tt> + log <i>n</i>)
+ * time, just like <tt>get</tt> takes O(log <i>n</i>).
+ *
+ * <p>A full node is split into two halves when an element is inserted into
+ * it, or gets a new neighbour if the element is appended to it. A node that
+ * drops below half of its capacity is merged with the next node if that node
+ * is in its subtree and the elements fit.
+ *
+ * <p>Snapshots of an {@link UnrolledLinkedList} are taken with
+ * {@link UnrolledLinkedList#snapshot()}; they share the element arrays of the
+ * list, which copies an array before it modifies it again.
+ *
+ * <p>Since the list never changes, its iterators never throw
+ * {@link java.util.ConcurrentModificationException
+ * ConcurrentModificationException}, and it can be shared freely between
+ * threads. The methods of the {@link List} interface that would modify the
+ * list throw an {@link UnsupportedOperationException}.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see UnrolledLinkedList
+ */
+public final class PersistentUnrolledList<E> extends AbstractList<E> implements List<E> {
+
+    /**
+     * The maximum number of elements that can be stored in a single node.
+     */
+    private final int nodeCapacity;
+
+    /**
+     * The root of the tree of nodes, or <tt>null</tt> if the list is empty.
+     */
+    private final Node root;
+
+    /**
+     * Constructs a list with the specified root.
+     */
+    private PersistentUnrolledList(int nodeCapacity, Node root) {
+
+        this.nodeCapacity = nodeCapacity;
+        this.root = root;
+
+    }
+
+    /**
+     * Constructs a list from node arrays. The arrays are not copied, and must
+     * never be modified afterwards.
+     *
+     * @param nodeCapacity the maximum number of elements in a node
+     * @param arrays the element arrays of the nodes, in list order
+     * @param offsets the position of the first element in each array
+     * @param counts the number of elements in each array
+     * @param numNodes the number of nodes
+     */
+    PersistentUnrolledList(int nodeCapacity, Object[][] arrays, int[] offsets, int[] counts, int numNodes) {
+
+        this(nodeCapacity, build(arrays, offsets, counts, 0, numNodes));
+
+    }
+
+    /**
+     * Returns an empty list with the specified
+     * {@link PersistentUnrolledList#nodeCapacity nodeCapacity}. For
+     * performance reasons <tt>nodeCapacity</tt> must be greater than or equal
+     * to 8.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @return an empty list
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public static <E> PersistentUnrolledList<E> empty(int nodeCapacity) throws IllegalArgumentException {
+
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, null);
+
+    }
+
+    /**
+     * Returns an empty list with
+     * {@link PersistentUnrolledList#nodeCapacity nodeCapacity} of 16.
+     *
+     * @return an empty list
+     */
+    public static <E> PersistentUnrolledList<E> empty() {
+
+        return empty(16);
+
+    }
+
+    /**
+     * Returns a list with the elements of the specified collection, in the
+     * order they are returned by the collection's iterator. The nodes are
+     * filled completely.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @param c the collection whose elements are to be placed into the list
+     * @return a list with the elements of the collection
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     * @throws NullPointerException if the specified collection is null
+     */
+    public static <E> PersistentUnrolledList<E> of(int nodeCapacity, Collection<? extends E> c)
+            throws IllegalArgumentException {
+
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        Object[] a = c.toArray();
+        int numNodes = (a.length + nodeCapacity - 1) / nodeCapacity;
+        Object[][] arrays = new Object[numNodes][];
+        int[] counts = new int[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            int from = i * nodeCapacity;
+            counts[i] = Math.min(nodeCapacity, a.length - from);
+            arrays[i] = Arrays.copyOfRange(a, from, from + counts[i]);
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, arrays, new int[numNodes], counts, numNodes);
+
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    @Override
+    public int size() {
+
+        return size(root);
+
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    @Override
+    public E get(int index) {
+
+        if (index < 0 || index >= size(root)) {
+            throw new IndexOutOfBoundsException();
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else {
+                index -= leftSize;
+                if (index < node.count) {
+                    return (E) node.elements[node.offset + index];
+                }
+                index -= node.count;
+                node = node.right;
+            }
+        }
+
+    }
+
+    /**
+     * Returns a list with the specified element appended to the end of this
+     * list.
+     *
+     * @param e the element to be appended
+     * @return the new list
+     */
+    public PersistentUnrolledList<E> plus(E e) {
+
+        return plus(size(root), e);
+
+    }
+
+    /**
+     * Returns a list with the specified element inserted at the specified
+     * position of this list.
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param e the element to be inserted
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt; size()</tt>)
+     */
+    public PersistentUnrolledList<E> plus(int index, E e) {
+
+        if (index < 0 || index > size(root)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, insert(root, index, e));
+
+    }
+
+    /**
+     * Returns a list with the element at the specified position replaced by
+     * the specified element.
+     *
+     * @param index index of the element to replace
+     * @param e element to be stored at the specified position
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public PersistentUnrolledList<E> with(int index, E e) {
+
+        if (index < 0 || index >= size(root)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, replace(root, index, e));
+
+    }
+
+    /**
+     * Returns a list without the element at the specified position.
+     *
+     * @param index the index of the element to be removed
+     * @return the new list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         (<tt>index &lt; 0 || index &gt;= size()</tt>)
+     */
+    public PersistentUnrolledList<E> minus(int index) {
+
+        if (index < 0 || index >= size(root)) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, delete(root, index));
+
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence.
+     * The iterator does not support <tt>remove</tt>.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    @Override
+    public Iterator<E> iterator() {
+
+        return new PersistentIterator();
+
+    }
+
+    /**
+     * Performs the given action for each element of this list, one node at
+     * a time.
+     *
+     * @param action the action to be performed for each element
+     * @throws NullPointerException if the specified action is null
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        forEach(root, action);
+
+    }
+
+    private static <E> void forEach(Node node, Consumer<? super E> action) {
+
+        while (node != null) {
+            forEach(node.left, action);
+            for (int i = node.offset; i < node.offset + node.count; i++) {
+                action.accept((E) node.elements[i]);
+            }
+            node = node.right;
+        }
+
+    }
+
+    private static int size(Node node) {
+
+        return (node == null) ? 0 : node.size;
+
+    }
+
+    private static int height(Node node) {
+
+        return (node == null) ? 0 : node.height;
+
+    }
+
+    /**
+     * Builds a perfectly balanced tree over a range of node arrays.
+     */
+    private static Node build(Object[][] arrays, int[] offsets, int[] counts, int from, int to) {
+
+        if (from == to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new Node(build(arrays, offsets, counts, from, mid), arrays[mid], offsets[mid], counts[mid],
+                build(arrays, offsets, counts, mid + 1, to));
+
+    }
+
+    /**
+     * Returns a balanced tree with the specified subtrees and node contents.
+     * The heights of the subtrees may differ by up to two, as they do after
+     * a single insertion or deletion.
+     */
+    private static Node balance(Node left, Object[] elements, int offset, int count, Node right) {
+
+        int hl = height(left);
+        int hr = height(right);
+        if (hl > hr + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.left, left.elements, left.offset, left.count,
+                        new Node(left.right, elements, offset, count, right));
+            }
+            Node lr = left.right;
+            return new Node(new Node(left.left, left.elements, left.offset, left.count, lr.left),
+                    lr.elements, lr.offset, lr.count, new Node(lr.right, elements, offset, count, right));
+        }
+        if (hr > hl + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(new Node(left, elements, offset, count, right.left),
+                        right.elements, right.offset, right.count, right.right);
+            }
+            Node rl = right.left;
+            return new Node(new Node(left, elements, offset, count, rl.left), rl.elements, rl.offset, rl.count,
+                    new Node(rl.right, right.elements, right.offset, right.count, right.right));
+        }
+        return new Node(left, elements, offset, count, right);
+
+    }
+
+    /**
+     * Inserts an element at a position of a subtree.
+     */
+    private Node insert(Node node, int index, Object e) {
+
+        if (node == null) {
+            return new Node(null, new Object[] {e}, 0, 1, null);
+        }
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return balance(insert(node.left, index, e), node.elements, node.offset, node.count, node.right);
+        }
+        int ptr = index - leftSize;
+        if (ptr > node.count) {
+            return balance(node.left, node.elements, node.offset, node.count,
+                    insert(node.right, ptr - node.count, e));
+        }
+        if (node.count < nodeCapacity) {
+            Object[] elements = new Object[node.count + 1];
+            System.arraycopy(node.elements, node.offset, elements, 0, ptr);
+            elements[ptr] = e;
+            System.arraycopy(node.elements, node.offset + ptr, elements, ptr + 1, node.count - ptr);
+            return new Node(node.left, elements, 0, elements.length, node.right);
+        }
+        // split the full node
+        Object[] first;
+        Object[] second;
+        if (ptr == node.count) {
+            first = node.elements;
+            second = new Object[] {e};
+        } else {
+            int half = nodeCapacity / 2;
+            first = new Object[(ptr < half) ? half + 1 : half];
+            second = new Object[nodeCapacity + 1 - first.length];
+            Object[] all = new Object[nodeCapacity + 1];
+            System.arraycopy(node.elements, node.offset, all, 0, ptr);
+            all[ptr] = e;
+            System.arraycopy(node.elements, node.offset + ptr, all, ptr + 1, node.count - ptr);
+            System.arraycopy(all, 0, first, 0, first.length);
+            System.arraycopy(all, first.length, second, 0, second.length);
+        }
+        if (first == node.elements) {
+            return balance(node.left, first, node.offset, node.count, insertFirst(node.right, second));
+        }
+        return balance(node.left, first, 0, first.length, insertFirst(node.right, second));
+
+    }
+
+    /**
+     * Inserts a node with the specified elements before the first node of a
+     * subtree.
+     */
+    private static Node insertFirst(Node node, Object[] elements) {
+
+        if (node == null) {
+            return new Node(null, elements, 0, elements.length, null);
+        }
+        return balance(insertFirst(node.left, elements), node.elements, node.offset, node.count, node.right);
+
+    }
+
+    /**
+     * Replaces the element at a position of a subtree.
+     */
+    private static Node replace(Node node, int index, Object e) {
+
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return new Node(replace(node.left, index, e), node.elements, node.offset, node.count, node.right);
+        }
+        int ptr = index - leftSize;
+        if (ptr >= node.count) {
+            return new Node(node.left, node.elements, node.offset, node.count,
+                    replace(node.right, ptr - node.count, e));
+        }
+        Object[] elements = Arrays.copyOfRange(node.elements, node.offset, node.offset + node.count);
+        elements[ptr] = e;
+        return new Node(node.left, elements, 0, node.count, node.right);
+
+    }
+
+    /**
+     * Removes the element at a position of a subtree.
+     */
+    private Node delete(Node node, int index) {
+
+        int leftSize = size(node.left);
+        if (index < leftSize) {
+            return balance(delete(node.left, index), node.elements, node.offset, node.count, node.right);
+        }
+        int ptr = index - leftSize;
+        if (ptr >= node.count) {
+            return balance(node.left, node.elements, node.offset, node.count,
+                    delete(node.right, ptr - node.count));
+        }
+        int count = node.count - 1;
+        Node right = node.right;
+        Object[] elements;
+        if (count < nodeCapacity / 2 && right != null && count + first(right).count <= nodeCapacity) {
+            // merge with the next node
+            Node next = first(right);
+            elements = new Object[count + next.count];
+            System.arraycopy(next.elements, next.offset, elements, count, next.count);
+            right = deleteFirst(right);
+        } else if (count == 0) {
+            return join(node.left, right);
+        } else {
+            elements = new Object[count];
+        }
+        System.arraycopy(node.elements, node.offset, elements, 0, ptr);
+        System.arraycopy(node.elements, node.offset + ptr + 1, elements, ptr, count - ptr);
+        return balance(node.left, elements, 0, elements.length, right);
+
+    }
+
+    /**
+     * Returns the first node of a subtree.
+     */
+    private static Node first(Node node) {
+
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+
+    }
+
+    /**
+     * Removes the first node of a subtree.
+     */
+    private static Node deleteFirst(Node node) {
+
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(deleteFirst(node.left), node.elements, node.offset, node.count, node.right);
+
+    }
+
+    /**
+     * Joins two subtrees whose heights differ by at most one, all nodes of
+     * the first one coming before the nodes of the second one.
+     */
+    private static Node join(Node left, Node right) {
+
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        Node next = first(right);
+        return balance(left, next.elements, next.offset, next.count, deleteFirst(right));
+
+    }
+
+    /**
+     * A node of the tree. It holds up to <tt>nodeCapacity</tt> elements, and
+     * the number of elements and the height of its subtree.
+     */
+    private static final class Node {
+
+        /**
+         * The subtree with the nodes before this one.
+         */
+        final Node left;
+
+        /**
+         * The subtree with the nodes after this one.
+         */
+        final Node right;
+
+        /**
+         * The array in which the elements are stored. It is never modified.
+         */
+        final Object[] elements;
+
+        /**
+         * The position of the first element in the array.
+         */
+        final int offset;
+
+        /**
+         * The number of elements stored in this node.
+         */
+        final int count;
+
+        /**
+         * The number of elements stored in the subtree.
+         */
+        final int size;
+
+        /**
+         * The height of the subtree.
+         */
+        final int height;
+
+        Node(Node left, Object[] elements, int offset, int count, Node right) {
+
+            this.left = left;
+            this.right = right;
+            this.elements = elements;
+            this.offset = offset;
+            this.count = count;
+            this.size = size(left) + count + size(right);
+            this.height = Math.max(height(left), height(right)) + 1;
+
+        }
+
+    }
+
+    /**
+     * An iterator that walks the tree in order, keeping the path to the
+     * current node on a stack.
+     */
+    private class PersistentIterator implements Iterator<E> {
+
+        /**
+         * The nodes whose elements have yet to be returned, the next one on
+         * top.
+         */
+        private final Node[] stack = new Node[height(root) + 1];
+
+        private int depth = 0;
+
+        /**
+         * The current node.
+         */
+        private Node node;
+
+        /**
+         * The position of the next element within the current node.
+         */
+        private int ptr;
+
+        PersistentIterator() {
+
+            pushLeft(root);
+            advance();
+
+        }
+
+        private void pushLeft(Node n) {
+
+            while (n != null) {
+                stack[depth++] = n;
+                n = n.left;
+            }
+
+        }
+
+        /**
+         * Moves to the next node in order that holds any elements.
+         */
+        private void advance() {
+
+            node = null;
+            ptr = 0;
+            while (depth > 0) {
+                Node n = stack[--depth];
+                pushLeft(n.right);
+                if (n.count > 0) {
+                    node = n;
+                    return;
+                }
+            }
+
+        }
+
+        public boolean hasNext() {
+
+            return node != null;
+
+        }
+
+        public E next() {
+
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            E el = (E) node.elements[node.offset + ptr++];
+            if (ptr == node.count) {
+                advance();
+            }
+            return el;
+
+        }
+
+    }
+
+}
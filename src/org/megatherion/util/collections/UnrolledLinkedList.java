@@ -6,13 +6,30 @@
 package org.megatherion.util.collections;
 
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * An unrolled linked list implemetation of the
@@ -34,6 +51,13 @@ import java.util.ConcurrentModificationException;
  * unsynchronized access to the list:<pre>
  *   List list = Collections.synchronizedList(new LinkedList(...));</pre>
  *
+ * <p>Any number of threads may read the list at the same time while it is
+ * not modified structurally, with the positional operations as well. These
+ * remember the node they have found as a <i>finger</i> from which the next
+ * access starts, but the finger is an immutable object that is only ever
+ * replaced as a whole, so a thread never sees the node found by one access
+ * paired with the position found by another.
+ *
  * <p>The iterators returned by this class's <tt>iterator</tt> and
  * <tt>listIterator</tt> methods are <i>fail-fast</i>: if the list is
  * structurally modified at any time after the iterator is created, in
@@ -44,16 +68,22 @@ import java.util.ConcurrentModificationException;
  * risking arbitrary, non-deterministic behavior at an undetermined
  * time in the future.
  *
+ * <p>The list also implements the {@link Deque} interface. The elements of
+ * a node need not start at the beginning of its array, so that there can be
+ * free space at both ends of it, and elements are added and removed at
+ * either end of the list without shifting the others.
+ *
+ * <p>Elements that are inserted or removed through a list iterator leave
+ * the free slots of their node as a gap at the iterator position, so that
+ * a run of edits at the same position does not shift any elements either.
+ *
  * @param <E> the type of elements held in this collection
  * @see <a href="http://en.wikipedia.org/wiki/Unrolled_linked_list">Unrolled_linked_list</a>
  */
 
-// TODO: Implement the java.util.List.addAll(int index, Collection<? extends E> c)
-//       method in a more efficient way. The current implementation is inherited
-//       from the java.util.AbstractList class.
 // TODO: Testing
 
-public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, Serializable {
+public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, Deque<E>, Serializable {
 
     /**
      * The maximum number of elements that can be stored in a single node.
@@ -63,17 +93,95 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
     /**
      * The current size of this list.
      */
-    private int size = 0;
+    private transient int size = 0;
 
     /**
      * The first node of this list.
      */
-    private Node firstNode;
+    private transient Node firstNode;
 
     /**
      * The last node of this list.
      */
-    private Node lastNode;
+    private transient Node lastNode;
+
+    /**
+     * The position of the element most recently inserted by
+     * {@link #insertIntoNode insertIntoNode} within its node.
+     */
+    private transient int insertedPtr;
+
+    /**
+     * Determines how a full node is split when an element is inserted into it.
+     */
+    private SplitPolicy splitPolicy = SplitPolicy.ADAPTIVE;
+
+    /**
+     * A node is only merged with one of its neighbours after a removal if it
+     * holds fewer elements than this.
+     */
+    private int mergeThreshold;
+
+    /**
+     * The maximum number of unused nodes kept for reuse.
+     */
+    private int nodePoolCapacity = 0;
+
+    /**
+     * Unused nodes, linked through their <tt>next</tt> field.
+     */
+    private transient Node nodePool;
+
+    /**
+     * The number of nodes in the node pool.
+     */
+    private transient int nodePoolSize = 0;
+
+    /**
+     * The number of nodes that have been taken from the node pool.
+     */
+    private transient long nodePoolHits = 0;
+
+    /**
+     * The number of nodes that had to be allocated because the node pool
+     * was empty.
+     */
+    private transient long nodePoolMisses = 0;
+
+    /**
+     * The index over the nodes of this list, or <tt>null</tt> if positional
+     * access should walk the node chain.
+     */
+    private transient NodeIndex nodeIndex;
+
+    /**
+     * The node that has a gap between its elements, left by the most recent
+     * insertion or removal through a list iterator, or <tt>null</tt> if no
+     * node has one.
+     */
+    private transient Node gapNode;
+
+    /**
+     * The counters of structural events, or <tt>null</tt> if statistics are
+     * not enabled.
+     */
+    private transient StatisticsCounters statistics;
+
+    /**
+     * The position most recently found by {@link #findNode(int) findNode},
+     * from which the next positional access starts walking if it is closer
+     * than either end of the list, or <tt>null</tt>. It is only valid while
+     * <tt>modCount</tt> is equal to its <tt>modCount</tt>. Every structural
+     * modification invalidates the finger, except for those of
+     * {@link #insertIntoNode insertIntoNode} and
+     * {@link #removeFromNode removeFromNode}, which move it along.
+     *
+     * <p>Read-only operations replace the finger as well, so it may be
+     * written by several threads at once. It is therefore never changed in
+     * place: a new immutable position is stored instead, and every method
+     * reads the field only once.
+     */
+    private transient NodePosition finger;
 
     /**
      * Constructs an empty list with the specified
@@ -86,12 +194,40 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
      */
     public UnrolledLinkedList(int nodeCapacity) throws IllegalArgumentException {
 
+        this(nodeCapacity, false);
+
+    }
+
+    /**
+     * Constructs an empty list with the specified
+     * {@link UnrolledLinkedList#nodeCapacity nodeCapacity}, optionally
+     * maintaining an index over its nodes.
+     *
+     * <p>An indexed list keeps a counted tree of its nodes up to date on
+     * every structural modification, so the positional operations
+     * (<tt>get</tt>, <tt>set</tt>, <tt>add(int, E)</tt>, <tt>remove(int)</tt>
+     * and <tt>listIterator(int)</tt>) locate their node in logarithmic time
+     * instead of walking the node chain. Lists that are mostly appended to
+     * and iterated should not be indexed.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @param indexed <tt>true</tt> if the nodes of this list should be indexed
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public UnrolledLinkedList(int nodeCapacity, boolean indexed) throws IllegalArgumentException {
+
         if (nodeCapacity < 8) {
             throw new IllegalArgumentException("nodeCapacity < 8");
         }
         this.nodeCapacity = nodeCapacity;
+        this.mergeThreshold = nodeCapacity;
         firstNode = new Node();
         lastNode = firstNode;
+        if (indexed) {
+            nodeIndex = new NodeIndex();
+            nodeIndex.rebuild();
+        }
 
     }
 
@@ -105,6 +241,348 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
 
     }
 
+    /**
+     * Returns the policy that determines how a full node is split when
+     * an element is inserted into it.
+     *
+     * @return the split policy of this list
+     */
+    public SplitPolicy getSplitPolicy() {
+
+        return splitPolicy;
+
+    }
+
+    /**
+     * Sets the policy that determines how a full node is split when
+     * an element is inserted into it. The default policy is
+     * {@link SplitPolicy#ADAPTIVE ADAPTIVE}.
+     *
+     * @param splitPolicy the new split policy
+     * @throws NullPointerException if <tt>splitPolicy</tt> is null
+     */
+    public void setSplitPolicy(SplitPolicy splitPolicy) {
+
+        if (splitPolicy == null) {
+            throw new NullPointerException();
+        }
+        this.splitPolicy = splitPolicy;
+
+    }
+
+    /**
+     * Returns the number of elements below which a node is merged with one
+     * of its neighbours after a removal.
+     *
+     * @return the merge threshold of this list
+     */
+    public int getMergeThreshold() {
+
+        return mergeThreshold;
+
+    }
+
+    /**
+     * Sets the number of elements below which a node is merged with one of
+     * its neighbours after a removal, if the neighbour has room for its
+     * elements. The default is <tt>nodeCapacity</tt>, so every removal tries
+     * to merge. A lower threshold (for example <tt>nodeCapacity / 4</tt>)
+     * avoids copying a node back and forth when elements are alternately
+     * added and removed around a node boundary, at the cost of leaving
+     * partially filled nodes behind; those can be packed later with
+     * {@link #compact() compact}. Empty nodes are always merged.
+     *
+     * @param mergeThreshold the new merge threshold
+     * @throws IllegalArgumentException if <tt>mergeThreshold</tt> is less
+     *         than 1 or greater than <tt>nodeCapacity</tt>
+     */
+    public void setMergeThreshold(int mergeThreshold) {
+
+        if (mergeThreshold < 1 || mergeThreshold > nodeCapacity) {
+            throw new IllegalArgumentException("mergeThreshold out of range");
+        }
+        this.mergeThreshold = mergeThreshold;
+
+    }
+
+    /**
+     * Packs the elements of this list into as few nodes as possible.
+     * Equivalent to <tt>compact(1.0)</tt>.
+     *
+     * @return the estimated number of bytes that have been released
+     * @see #compact(double)
+     */
+    public long compact() {
+
+        return compact(1.0);
+
+    }
+
+    /**
+     * Packs the elements of this list into as few nodes as possible, filling
+     * every node up to <tt>fillFactor * nodeCapacity</tt> elements. The
+     * nodes are walked once, each node is filled up with elements taken
+     * from the front of the following nodes, and nodes that become empty
+     * are unlinked. The order of the elements does not change. Nodes that
+     * already hold more elements than the target are left as they are.
+     *
+     * <p>A fill factor below 1 leaves room in every node, so that subsequent
+     * insertions do not immediately split the nodes again.
+     *
+     * <p>The returned value is an estimate of the memory held by the unlinked
+     * nodes, assuming compressed object references. Nodes that are kept in
+     * the {@link #setNodePoolCapacity(int) node pool} are not counted.
+     *
+     * @param fillFactor the fraction of a node to fill, greater than 0 and
+     *        at most 1
+     * @return the estimated number of bytes that have been released
+     * @throws IllegalArgumentException if <tt>fillFactor</tt> is not greater
+     *         than 0 and at most 1
+     */
+    public long compact(double fillFactor) {
+
+        closeGap();
+        if (!(fillFactor > 0.0 && fillFactor <= 1.0)) {
+            throw new IllegalArgumentException("fillFactor out of range");
+        }
+        int target = Math.max(1, (int) Math.ceil(nodeCapacity * fillFactor));
+        int released = 0;
+        Node node = firstNode;
+        Node next = node.next;
+        while (next != null) {
+            int n = Math.min(target - node.numElements, next.numElements);
+            if (n > 0) {
+                unshare(node);
+                unshare(next);
+                if (node.start + node.numElements + n > nodeCapacity) {
+                    moveElements(node, 0);
+                }
+                System.arraycopy(next.elements, next.start, node.elements, node.start + node.numElements, n);
+                for (int i = next.start; i < next.start + n; i++) {
+                    next.elements[i] = null;
+                }
+                node.numElements += n;
+                next.start += n;
+                next.numElements -= n;
+            }
+            if (next.numElements == 0) {
+                // unlink the empty node
+                Node following = next.next;
+                node.next = following;
+                if (following != null) {
+                    following.previous = node;
+                }
+                if (next == lastNode) {
+                    lastNode = node;
+                }
+                if (!recycleNode(next)) {
+                    released++;
+                }
+                next = following;
+            } else {
+                node = next;
+                next = next.next;
+            }
+        }
+        if (nodeIndex != null) {
+            nodeIndex.rebuild();
+        }
+        modCount++;
+        return released * nodeFootprint();
+
+    }
+
+    /**
+     * Packs the elements of this list into as few nodes as possible and
+     * empties the {@link #setNodePoolCapacity(int) node pool}, so that this
+     * list holds no more memory than its elements need.
+     *
+     * @return the estimated number of bytes that have been released
+     * @see #compact(double)
+     */
+    public long trimToSize() {
+
+        long released = compact(1.0) + nodePoolSize * nodeFootprint();
+        nodePool = null;
+        nodePoolSize = 0;
+        return released;
+
+    }
+
+    /**
+     * Returns the estimated number of bytes a node occupies: the node
+     * object and its element array, assuming compressed object references.
+     */
+    private long nodeFootprint() {
+
+        return 40 + ((16 + 4L * nodeCapacity + 7) & ~7L);
+
+    }
+
+    /**
+     * Returns the maximum number of unused nodes this list keeps for reuse.
+     *
+     * @return the capacity of the node pool
+     */
+    public int getNodePoolCapacity() {
+
+        return nodePoolCapacity;
+
+    }
+
+    /**
+     * Sets the maximum number of unused nodes this list keeps for reuse.
+     * Nodes that are unlinked by merges or by {@link #clear() clear} are put
+     * into the pool, and node splits take their new node from it, so a
+     * workload that keeps the number of nodes within this bound performs no
+     * node allocations. The default capacity is 0, which disables pooling.
+     *
+     * @param nodePoolCapacity the capacity of the node pool
+     * @throws IllegalArgumentException if <tt>nodePoolCapacity</tt> is negative
+     */
+    public void setNodePoolCapacity(int nodePoolCapacity) {
+
+        if (nodePoolCapacity < 0) {
+            throw new IllegalArgumentException("nodePoolCapacity < 0");
+        }
+        this.nodePoolCapacity = nodePoolCapacity;
+        while (nodePoolSize > nodePoolCapacity) {
+            nodePool = nodePool.next;
+            nodePoolSize--;
+        }
+
+    }
+
+    /**
+     * Returns the number of new nodes that have been taken from the node pool.
+     *
+     * @return the number of node pool hits
+     */
+    public long getNodePoolHits() {
+
+        return nodePoolHits;
+
+    }
+
+    /**
+     * Returns the number of new nodes that had to be allocated while node
+     * pooling was enabled, because the node pool was empty.
+     *
+     * @return the number of node pool misses
+     */
+    public long getNodePoolMisses() {
+
+        return nodePoolMisses;
+
+    }
+
+    /**
+     * Returns the fraction of new nodes that have been taken from the node
+     * pool, or 0 if no node has been requested while pooling was enabled.
+     *
+     * @return the node pool hit rate, between 0 and 1
+     */
+    public double getNodePoolHitRate() {
+
+        long requests = nodePoolHits + nodePoolMisses;
+        return (requests == 0) ? 0.0 : (double) nodePoolHits / requests;
+
+    }
+
+    /**
+     * Returns whether this list counts node splits, merges and the nodes
+     * traversed by positional accesses.
+     *
+     * @return <tt>true</tt> if statistics are enabled
+     * @see #setStatisticsEnabled(boolean)
+     */
+    public boolean isStatisticsEnabled() {
+
+        return statistics != null;
+
+    }
+
+    /**
+     * Enables or disables the counting of node splits, merges and the nodes
+     * traversed by positional accesses, which are reported by
+     * {@link #getStatistics() getStatistics}. Enabling statistics resets
+     * the counters. Statistics are disabled by default, in which case the
+     * operations of the list only pay for a <tt>null</tt> check; they are
+     * also disabled in a deserialized list.
+     *
+     * @param enabled whether statistics should be enabled
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+
+        if (!enabled) {
+            statistics = null;
+        } else if (statistics == null) {
+            statistics = new StatisticsCounters();
+        }
+
+    }
+
+    /**
+     * Resets the counters of node splits, merges and traversed nodes to 0.
+     */
+    public void resetStatistics() {
+
+        if (statistics != null) {
+            statistics = new StatisticsCounters();
+        }
+
+    }
+
+    /**
+     * Returns a snapshot of the structure of this list: the number of nodes
+     * and how full they are, and, if {@link #setStatisticsEnabled(boolean)
+     * statistics are enabled}, how often nodes have been split and merged
+     * and how many nodes positional accesses have traversed since the
+     * counters were last reset. The structure is measured by walking the
+     * nodes, which takes time proportional to their number.
+     *
+     * @return the statistics of this list
+     */
+    public Statistics getStatistics() {
+
+        int[] histogram = new int[Statistics.FILL_BUCKETS];
+        int nodeCount = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            int bucket = (int) ((long) node.numElements * Statistics.FILL_BUCKETS / nodeCapacity);
+            histogram[Math.min(bucket, Statistics.FILL_BUCKETS - 1)]++;
+            nodeCount++;
+        }
+        StatisticsCounters counters = statistics;
+        if (counters == null) {
+            counters = new StatisticsCounters();
+        }
+        return new Statistics(size, nodeCapacity, nodeCount, histogram, counters.splits,
+                counters.merges, counters.accesses, counters.hops);
+
+    }
+
+    /**
+     * Returns a view of the counters of the {@link #getStatistics()
+     * statistics} of this list that can be registered with an
+     * <tt>MBeanServer</tt>, e.g.<pre>
+     *   ManagementFactory.getPlatformMBeanServer().registerMBean(
+     *           list.getStatisticsMXBean(),
+     *           new ObjectName("com.example:type=UnrolledLinkedList,name=jobs"));</pre>
+     * The bean only reads the size of the list and the counters of
+     * structural events, never the nodes, so its attributes can be read
+     * while the list is being modified; they may then be slightly out of
+     * date. The node count and the fill histogram are only reported by
+     * <tt>getStatistics</tt>. Registering the bean does not enable
+     * statistics.
+     *
+     * @return an MXBean that reports the statistics of this list
+     */
+    public StatisticsMXBean getStatisticsMXBean() {
+
+        return new StatisticsBean();
+
+    }
+
     /**
      * Returns the number of elements in this list.
      *
@@ -176,10 +654,8 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         Object[] array = new Object[size];
         int p = 0;
         for (Node node = firstNode; node != null; node = node.next) {
-            for (int i = 0; i < node.numElements; i++) {
-                array[p] = node.elements[i];
-                p++;
-            }
+            copyElements(node, 0, array, p, node.numElements);
+            p += node.numElements;
         }
         return array;
 
@@ -209,10 +685,8 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         Object[] result = a;
         int p = 0;
         for (Node node = firstNode; node != null; node = node.next) {
-            for (int i = 0; i < node.numElements; i++) {
-                result[p] = node.elements[i];
-                p++;
-            }
+            copyElements(node, 0, result, p, node.numElements);
+            p += node.numElements;
         }
         return a;
 
@@ -248,12 +722,13 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
     @Override
     public boolean remove(Object o) {
 
+        closeGap();
         int index = 0;
         Node node = firstNode;
         if (o == null) {
             while (node != null) {
                 for (int ptr = 0; ptr < node.numElements; ptr++) {
-                    if (node.elements[ptr] == null) {
+                    if (node.elements[node.start + ptr] == null) {
                         removeFromNode(node, ptr);
                         return true;
                     }
@@ -264,7 +739,7 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         } else {
             while (node != null) {
                 for (int ptr = 0; ptr < node.numElements; ptr++) {
-                    if (o.equals(node.elements[ptr])) {
+                    if (o.equals(node.elements[node.start + ptr])) {
                         removeFromNode(node, ptr);
                         return true;
                     }
@@ -311,6 +786,11 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
      * the operation is in progress.  (Note that this will occur if the
      * specified collection is this list, and it's nonempty.)
      *
+     * <p>The elements are copied in bulk into the last node and into new,
+     * full nodes. If the specified collection is another
+     * <tt>UnrolledLinkedList</tt>, its nodes are copied directly without
+     * creating an intermediate array.
+     *
      * @param c collection containing elements to be added to this list
      * @return <tt>true</tt> if this list changed as a result of the call
      * @throws NullPointerException if the specified collection is null
@@ -322,13 +802,112 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (c == null) {
             throw new NullPointerException();
         }
-        boolean changed = false;
-        Iterator<? extends E> it = c.iterator();
-        while (it.hasNext()) {
-            add(it.next());
-            changed = true;
+        int added;
+        closeGap();
+        if (c instanceof UnrolledLinkedList && !(c instanceof ReverseOrderView) && c != this) {
+            UnrolledLinkedList<?> list = (UnrolledLinkedList<?>) c;
+            added = list.size;
+            Node last = lastNode;
+            for (UnrolledLinkedList<?>.Node node = list.firstNode; node != null; node = node.next) {
+                // the other list is only read, so its gap is left open
+                int start = node.start;
+                int gapPtr = node.gapPtr;
+                if (node.gapSize > 0) {
+                    last = fillNodes(last, node.elements, start, gapPtr);
+                    start += node.gapSize;
+                } else {
+                    gapPtr = 0;
+                }
+                last = fillNodes(last, node.elements, start + gapPtr, node.numElements - gapPtr);
+            }
+        } else {
+            Object[] a = c.toArray();
+            added = a.length;
+            fillNodes(lastNode, a, 0, a.length);
+        }
+        if (added == 0) {
+            return false;
+        }
+        size += added;
+        modCount++;
+        return true;
+
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position.  Shifts the element
+     * currently at that position (if any) and any subsequent elements to
+     * the right (increases their indices).  The new elements will appear
+     * in the list in the order that they are returned by the
+     * specified collection's iterator.
+     *
+     * <p>The node at the specified position is split once and the new
+     * elements are packed into full nodes that are linked in between
+     * the two halves.
+     *
+     * @param index index at which to insert the first element from the
+     *              specified collection
+     * @param c collection containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException if the specified collection is null
+     */
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        Object[] a = c.toArray();
+        if (a.length == 0) {
+            return false;
+        }
+        closeGap();
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int ptr = index - position.base;
+        unshare(node);
+        if (node.numElements + a.length <= nodeCapacity) {
+            if (node.start + node.numElements + a.length > nodeCapacity) {
+                moveElements(node, 0);
+            }
+            int start = node.start;
+            System.arraycopy(node.elements, start + ptr, node.elements, start + ptr + a.length,
+                    node.numElements - ptr);
+            System.arraycopy(a, 0, node.elements, start + ptr, a.length);
+            node.numElements += a.length;
+            if (nodeIndex != null) {
+                nodeIndex.adjust(node, a.length);
+            }
+        } else {
+            // move the elements after the insertion point to a node of their own
+            int tailLength = node.numElements - ptr;
+            Node tailNode = null;
+            if (tailLength > 0) {
+                tailNode = newNode();
+                System.arraycopy(node.elements, node.start + ptr, tailNode.elements, 0, tailLength);
+                for (int i = node.start + ptr; i < node.start + node.numElements; i++) {
+                    node.elements[i] = null;
+                }
+                node.numElements = ptr;
+                tailNode.numElements = tailLength;
+                if (nodeIndex != null) {
+                    nodeIndex.adjust(node, -tailLength);
+                }
+                linkAfter(node, tailNode);
+            }
+            Node last = fillNodes(node, a, 0, a.length);
+            if (tailNode != null && last.numElements + tailLength <= nodeCapacity) {
+                mergeWithNextNode(last);
+            }
         }
-        return changed;
+        size += a.length;
+        modCount++;
+        return true;
 
     }
 
@@ -336,6 +915,10 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
      * Removes from this list all of its elements that are contained in the
      * specified collection.
      *
+     * <p>The list is compacted in a single pass over its nodes (see
+     * {@link #removeIf(Predicate) removeIf}). Large collections that are not
+     * sets are copied into a hash set first.
+     *
      * @param c collection containing elements to be removed from this list
      * @return <tt>true</tt> if this list changed as a result of the call
      * @throws NullPointerException if the specified collection is null
@@ -348,14 +931,14 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (c == null) {
             throw new NullPointerException();
         }
-        Iterator<?> it = c.iterator();
-        boolean changed = false;
-        while (it.hasNext()) {
-            if (remove(it.next())) {
-                changed = true;
+        final Collection<?> lookup = toLookup(c);
+        return removeWhere(new Predicate<Object>() {
+
+            public boolean test(Object o) {
+                return lookup.contains(o);
             }
-        }
-        return changed;
+
+        });
 
     }
 
@@ -365,6 +948,10 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
      * from this list all the elements that are not contained in the specified
      * collection.
      *
+     * <p>The list is compacted in a single pass over its nodes (see
+     * {@link #removeIf(Predicate) removeIf}). Large collections that are not
+     * sets are copied into a hash set first.
+     *
      * @param c collection containing elements to be retained in this list
      * @return <tt>true</tt> if this list changed as a result of the call
      * @throws NullPointerException if the specified collection is null
@@ -377,41 +964,232 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (c == null) {
             throw new NullPointerException();
         }
-        boolean changed = false;
-        for (Node node = firstNode; node != null; node = node.next) {
-            for (int i = 0; i < node.numElements; i++) {
-                if (!c.contains(node.elements[i])) {
-                    removeFromNode(node, i);
-                    i--;
-                    changed = true;
-                }
+        final Collection<?> lookup = toLookup(c);
+        return removeWhere(new Predicate<Object>() {
+
+            public boolean test(Object o) {
+                return !lookup.contains(o);
             }
-        }
-        return changed;
+
+        });
 
     }
 
     /**
-     * Removes all of the elements from this list.
+     * Removes all of the elements of this list that satisfy the given
+     * predicate.
+     *
+     * <p>The nodes are walked once with two cursors: every element that is
+     * kept is moved to the write cursor at most once, the nodes before the
+     * write cursor end up full, and the nodes after it are unlinked at the
+     * end. If the predicate throws an exception, the elements that have not
+     * been tested yet are kept.
+     *
+     * @param filter a predicate which returns <tt>true</tt> for elements to be
+     *        removed
+     * @return <tt>true</tt> if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+
+        if (filter == null) {
+            throw new NullPointerException();
+        }
+        return removeWhere(filter);
+
+    }
+
+    /**
+     * Returns a collection with the same elements as the specified one whose
+     * <tt>contains</tt> method is fast.
+     */
+    private static Collection<?> toLookup(Collection<?> c) {
+
+        if (c.size() > 16 && !(c instanceof Set)) {
+            return new HashSet<Object>(c);
+        }
+        return c;
+
+    }
+
+    /**
+     * Removes the elements that satisfy the given predicate in a single pass.
+     * The write cursor starts at the first element to be removed, the
+     * elements before it are not touched.
+     */
+    private boolean removeWhere(Predicate<? super E> filter) {
+
+        closeGap();
+        // the positions are indices into the element arrays, not relative
+        // to the start of the nodes
+        Node readNode = firstNode;
+        int readPtr = readNode.start;
+        int readEnd = readPtr + readNode.numElements;
+        Node writeNode = null;
+        int writePtr = 0;
+        // the end of the elements writeNode held before the pass
+        int writeEnd = 0;
+        int removed = 0;
+        try {
+            while (readNode != null) {
+                Object[] elements = readNode.elements;
+                for (; readPtr < readEnd; readPtr++) {
+                    Object element = elements[readPtr];
+                    if (filter.test((E) element)) {
+                        if (removed == 0) {
+                            writeNode = readNode;
+                            writePtr = readPtr;
+                            writeEnd = readEnd;
+                            unshare(writeNode);
+                        }
+                        removed++;
+                    } else if (removed > 0) {
+                        if (writePtr == nodeCapacity) {
+                            writeNode.numElements = nodeCapacity - writeNode.start;
+                            writeNode = writeNode.next;
+                            unshare(writeNode);
+                            writePtr = 0;
+                            writeEnd = writeNode.start + writeNode.numElements;
+                            writeNode.start = 0;
+                        }
+                        writeNode.elements[writePtr++] = element;
+                    }
+                }
+                readNode = readNode.next;
+                readPtr = (readNode == null) ? 0 : readNode.start;
+                readEnd = (readNode == null) ? 0 : readPtr + readNode.numElements;
+            }
+        } finally {
+            if (removed > 0) {
+                // keep the elements that have not been tested
+                while (readNode != null) {
+                    for (; readPtr < readEnd; readPtr++) {
+                        if (writePtr == nodeCapacity) {
+                            writeNode.numElements = nodeCapacity - writeNode.start;
+                            writeNode = writeNode.next;
+                            unshare(writeNode);
+                            writePtr = 0;
+                            writeEnd = writeNode.start + writeNode.numElements;
+                            writeNode.start = 0;
+                        }
+                        writeNode.elements[writePtr++] = readNode.elements[readPtr];
+                    }
+                    readNode = readNode.next;
+                    readPtr = (readNode == null) ? 0 : readNode.start;
+                    readEnd = (readNode == null) ? 0 : readPtr + readNode.numElements;
+                }
+                for (int i = writePtr; i < writeEnd; i++) {
+                    writeNode.elements[i] = null;
+                }
+                writeNode.numElements = writePtr - writeNode.start;
+                if (writeNode.numElements == 0) {
+                    writeNode.start = 0;
+                    // do not leave an empty node at the end of the list
+                    if (writeNode.previous != null) {
+                        writeNode = writeNode.previous;
+                    }
+                }
+                // unlink the nodes after the write cursor
+                Node node = writeNode.next;
+                writeNode.next = null;
+                lastNode = writeNode;
+                while (node != null) {
+                    Node next = node.next;
+                    recycleNode(node);
+                    node = next;
+                }
+                size -= removed;
+                modCount++;
+                if (nodeIndex != null) {
+                    nodeIndex.rebuild();
+                }
+            }
+        }
+        return (removed > 0);
+
+    }
+
+    /**
+     * Removes all of the elements from this list.
      */
     @Override
     public void clear() {
 
+        closeGap();
         Node node = firstNode.next;
         while (node != null) {
             Node next = node.next;
-            node.next = null;
-            node.previous = null;
-            node.elements = null;
+            if (!recycleNode(node)) {
+                node.next = null;
+                node.previous = null;
+                node.elements = null;
+            }
             node = next;
         }
         lastNode = firstNode;
+        if (firstNode.shared) {
+            firstNode.elements = new Object[nodeCapacity];
+            firstNode.shared = false;
+        }
         for (int ptr = 0; ptr < firstNode.numElements; ptr++) {
-            firstNode.elements[ptr] = null;
+            firstNode.elements[firstNode.start + ptr] = null;
         }
+        firstNode.start = 0;
         firstNode.numElements = 0;
         firstNode.next = null;
         size = 0;
+        finger = null;
+        modCount++;
+        if (nodeIndex != null) {
+            nodeIndex.rebuild();
+        }
+
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <tt>fromIndex</tt>, inclusive, and <tt>toIndex</tt>, exclusive.
+     * Shifts any succeeding elements to the left (reduces their index).
+     *
+     * <p>The elements are not removed one at a time: the first and the last
+     * node of the range are trimmed with array copies, and all nodes in
+     * between are unlinked at once, so the cost is proportional to the
+     * number of nodes in the range. This makes dropping the oldest elements
+     * of a large list cheap, e.g. <tt>removeRange(0, n)</tt>.
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> or
+     *         <tt>toIndex</tt> is out of range
+     *         <tt>(fromIndex &lt; 0 || toIndex &gt; size() ||
+     *         toIndex &lt; fromIndex)</tt>
+     */
+    @Override
+    public void removeRange(int fromIndex, int toIndex) throws IndexOutOfBoundsException {
+
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (fromIndex < toIndex) {
+            NodePosition position = findNode(fromIndex);
+            removeElements(position.node, fromIndex - position.base, toIndex - fromIndex);
+        }
+
+    }
+
+    /**
+     * Removes the elements at the end of this list, so that only the first
+     * <tt>newSize</tt> elements remain. Equivalent to
+     * <tt>removeRange(newSize, size())</tt>.
+     *
+     * @param newSize the number of elements to keep
+     * @throws IndexOutOfBoundsException if <tt>newSize</tt> is negative or
+     *         greater than the size of this list
+     */
+    public void truncate(int newSize) throws IndexOutOfBoundsException {
+
+        removeRange(newSize, size);
 
     }
 
@@ -427,22 +1205,9 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException();
         }
-        Node node;
-        int p = 0;
-        if (size - index > index) {
-            node = firstNode;
-            while (p <= index - node.numElements) {
-                p += node.numElements;
-                node = node.next;
-            }
-        } else {
-            node = lastNode;
-            p = size;
-            while ((p -= node.numElements) > index) {
-                node = node.previous;
-            }
-        }
-        return (E) node.elements[index - p];
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        return (E) node.elements[slot(node, index - position.base)];
 
     }
 
@@ -462,23 +1227,12 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
             throw new IndexOutOfBoundsException();
         }
         E el = null;
-        Node node;
-        int p = 0;
-        if (size - index > index) {
-            node = firstNode;
-            while (p <= index - node.numElements) {
-                p += node.numElements;
-                node = node.next;
-            }
-        } else {
-            node = lastNode;
-            p = size;
-            while ((p -= node.numElements) > index) {
-                node = node.previous;
-            }
-        }
-        el = (E) node.elements[index - p];
-        node.elements[index - p] = element;
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int p = position.base;
+        el = (E) node.elements[slot(node, index - p)];
+        unshare(node);
+        node.elements[slot(node, index - p)] = element;
         return el;
 
     }
@@ -498,21 +1252,9 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (index < 0 || index > size) {
             throw new IndexOutOfBoundsException();
         }
-        Node node;
-        int p = 0;
-        if (size - index > index) {
-            node = firstNode;
-            while (p <= index - node.numElements) {
-                p += node.numElements;
-                node = node.next;
-            }
-        } else {
-            node = lastNode;
-            p = size;
-            while ((p -= node.numElements) > index) {
-                node = node.previous;
-            }
-        }
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int p = position.base;
         insertIntoNode(node, index - p, element);
 
     }
@@ -533,22 +1275,10 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
             throw new IndexOutOfBoundsException();
         }
         E element = null;
-        Node node;
-        int p = 0;
-        if (size - index > index) {
-            node = firstNode;
-            while (p <= index - node.numElements) {
-                p += node.numElements;
-                node = node.next;
-            }
-        } else {
-            node = lastNode;
-            p = size;
-            while ((p -= node.numElements) > index) {
-                node = node.previous;
-            }
-        }
-        element = (E) node.elements[index - p];
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int p = position.base;
+        element = (E) node.elements[slot(node, index - p)];
         removeFromNode(node, index - p);
         return element;
 
@@ -573,7 +1303,7 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (o == null) {
             while (node != null) {
                 for (int ptr = 0; ptr < node.numElements; ptr++) {
-                    if (node.elements[ptr] == null) {
+                    if (node.elements[slot(node, ptr)] == null) {
                         return index + ptr;
                     }
                 }
@@ -583,7 +1313,7 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         } else {
             while (node != null) {
                 for (int ptr = 0; ptr < node.numElements; ptr++) {
-                    if (o.equals(node.elements[ptr])) {
+                    if (o.equals(node.elements[slot(node, ptr)])) {
                         return index + ptr;
                     }
                 }
@@ -615,7 +1345,7 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
             while (node != null) {
                 index -= node.numElements;
                 for (int i = node.numElements - 1; i >= 0; i--) {
-                    if (node.elements[i] == null) {
+                    if (node.elements[slot(node, i)] == null) {
                         return (index + i);
                     }
                 }
@@ -625,7 +1355,7 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
             while (node != null) {
                 index -= node.numElements;
                 for (int i = node.numElements - 1; i >= 0; i--) {
-                    if (o.equals(node.elements[i])) {
+                    if (o.equals(node.elements[slot(node, i)])) {
                         return (index + i);
                     }
                 }
@@ -637,208 +1367,3838 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
     }
 
     /**
-     * Returns a list iterator over the elements in this list (in proper
-     * sequence).
+     * Inserts the specified element at the beginning of this list.
      *
-     * @return a list iterator over the elements in this list (in proper
-     *         sequence)
+     * @param e the element to add
      */
-    @Override
-    public ListIterator<E> listIterator() {
+    public void addFirst(E e) {
 
-        return new ULLIterator(firstNode, 0, 0);
+        insertIntoNode(firstNode, 0, e);
 
     }
 
     /**
-     * Returns a list-iterator of the elements in this list (in proper
-     * sequence), starting at the specified position in the list.
-     * Obeys the general contract of <tt>List.listIterator(int)</tt>.<p>
+     * Appends the specified element to the end of this list.
      *
-     * The list-iterator is <i>fail-fast</i>: if the list is structurally
-     * modified at any time after the Iterator is created, in any way except
-     * through the list-iterator's own <tt>remove</tt> or <tt>add</tt>
-     * methods, the list-iterator will throw a
-     * <tt>ConcurrentModificationException</tt>.  Thus, in the face of
-     * concurrent modification, the iterator fails quickly and cleanly, rather
-     * than risking arbitrary, non-deterministic behavior at an undetermined
-     * time in the future.
+     * <p>This method is equivalent to {@link #add}.
      *
-     * @param index index of the first element to be returned from the
-     *              list-iterator (by a call to <tt>next</tt>)
-     * @return a ListIterator of the elements in this list (in proper
-     *         sequence), starting at the specified position in the list
-     * @throws IndexOutOfBoundsException {@inheritDoc}
-     * @see List#listIterator(int)
+     * @param e the element to add
      */
-    @Override
-    public ListIterator<E> listIterator(int index) {
+    public void addLast(E e) {
 
-        if (index < 0 || index > size) {
-            throw new IndexOutOfBoundsException();
-        }
-        Node node;
-        int p = 0;
-        if (size - index > index) {
-            node = firstNode;
-            while (p <= index - node.numElements) {
-                p += node.numElements;
-                node = node.next;
-            }
-        } else {
-            node = lastNode;
-            p = size;
-            while ((p -= node.numElements) > index) {
-                node = node.previous;
-            }
-        }
-        return new ULLIterator(node, index - p, index);
+        insertIntoNode(lastNode, lastNode.numElements, e);
 
     }
 
-    private static final long serialVersionUID = -674052309103045211L;
-
-    private class Node {
+    /**
+     * Inserts the specified element at the front of this list.
+     *
+     * @param e the element to insert
+     * @return <tt>true</tt> (as specified by {@link Deque#offerFirst})
+     */
+    public boolean offerFirst(E e) {
 
-        /**
-         * The next node.
-         */
-        Node next;
+        addFirst(e);
+        return true;
 
-        /**
-         * The previous node.
-         */
-        Node previous;
+    }
 
-        /**
-         * The number of elements stored in this node.
-         */
-        int numElements = 0;
+    /**
+     * Inserts the specified element at the end of this list.
+     *
+     * @param e the element to insert
+     * @return <tt>true</tt> (as specified by {@link Deque#offerLast})
+     */
+    public boolean offerLast(E e) {
 
-        /**
-         * The array in which the elements are stored.
-         */
-        Object[] elements;
+        addLast(e);
+        return true;
 
-        /**
-         * Constructs a new node.
-         */
-        Node() {
+    }
 
-            elements = new Object[nodeCapacity];
+    /**
+     * Adds the specified element as the tail (last element) of this list.
+     *
+     * @param e the element to add
+     * @return <tt>true</tt> (as specified by {@link java.util.Queue#offer})
+     */
+    public boolean offer(E e) {
 
-        }
+        return add(e);
 
     }
 
-    private class ULLIterator implements ListIterator<E> {
-
-        Node currentNode;
-        int ptr;
-        int index;
+    /**
+     * Pushes an element onto the stack represented by this list. In other
+     * words, inserts the element at the front of this list.
+     *
+     * <p>This method is equivalent to {@link #addFirst}.
+     *
+     * @param e the element to push
+     */
+    public void push(E e) {
 
-        private int expectedModCount = modCount;
+        addFirst(e);
 
-        ULLIterator(Node node, int ptr, int index) {
+    }
 
-            this.currentNode = node;
-            this.ptr = ptr;
-            this.index = index;
+    /**
+     * Removes and returns the first element from this list.
+     *
+     * @return the first element from this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E removeFirst() throws NoSuchElementException {
 
+        if (size == 0) {
+            throw new NoSuchElementException();
         }
+        return pollFirst();
 
-        @Override
-        public boolean hasNext() {
+    }
 
-            return (index < size - 1);
+    /**
+     * Removes and returns the last element from this list.
+     *
+     * @return the last element from this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E removeLast() throws NoSuchElementException {
 
+        if (size == 0) {
+            throw new NoSuchElementException();
         }
+        return pollLast();
 
-        @Override
-        public E next() {
+    }
 
-            ptr++;
-            if (ptr >= currentNode.numElements) {
-                if (currentNode.next != null) {
-                    currentNode = currentNode.next;
-                    ptr = 0;
-                } else {
-                    throw new NoSuchElementException();
-                }
-            }
-            index++;
-            checkForModification();
-            return (E) currentNode.elements[ptr];
+    /**
+     * Retrieves and removes the head (first element) of this list.
+     *
+     * @return the head of this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E remove() throws NoSuchElementException {
 
-        }
+        return removeFirst();
 
-        @Override
-        public boolean hasPrevious() {
+    }
 
-            return (index > 0);
+    /**
+     * Pops an element from the stack represented by this list. In other
+     * words, removes and returns the first element of this list.
+     *
+     * <p>This method is equivalent to {@link #removeFirst()}.
+     *
+     * @return the element at the front of this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E pop() throws NoSuchElementException {
 
-        }
+        return removeFirst();
 
-        @Override
-        public E previous() {
+    }
 
-            ptr--;
-            if (ptr < 0) {
-                if (currentNode.previous != null) {
-                    currentNode = currentNode.previous;
-                    ptr = currentNode.numElements - 1;
-                } else {
-                    throw new NoSuchElementException();
-                }
-            }
+    /**
+     * Retrieves and removes the first element of this list, or returns
+     * <tt>null</tt> if this list is empty. Unlike {@link #remove(int)
+     * remove(0)}, a node that is left with few elements is not merged with
+     * its neighbour, so that draining the list from the front never moves
+     * elements; a node that is left empty is unlinked.
+     *
+     * @return the first element of this list, or <tt>null</tt> if this list
+     *         is empty
+     */
+    public E pollFirst() {
+
+        closeGap();
+        if (size == 0) {
+            return null;
+        }
+        Node node = firstNode;
+        while (node.numElements == 0) {
+            node = node.next;
+        }
+        unshare(node);
+        int start = node.start;
+        E element = (E) node.elements[start];
+        node.elements[start] = null;
+        node.numElements--;
+        node.start = (node.numElements == 0) ? 0 : start + 1;
+        removedAtEnd(node);
+        return element;
+
+    }
+
+    /**
+     * Retrieves and removes the last element of this list, or returns
+     * <tt>null</tt> if this list is empty. Like {@link #pollFirst()
+     * pollFirst}, it never moves elements.
+     *
+     * @return the last element of this list, or <tt>null</tt> if this list
+     *         is empty
+     */
+    public E pollLast() {
+
+        closeGap();
+        if (size == 0) {
+            return null;
+        }
+        Node node = lastNode;
+        while (node.numElements == 0) {
+            node = node.previous;
+        }
+        unshare(node);
+        int end = node.start + node.numElements - 1;
+        E element = (E) node.elements[end];
+        node.elements[end] = null;
+        node.numElements--;
+        if (node.numElements == 0) {
+            node.start = 0;
+        }
+        removedAtEnd(node);
+        return element;
+
+    }
+
+    /**
+     * Retrieves and removes the head (first element) of this list, or
+     * returns <tt>null</tt> if this list is empty.
+     *
+     * @return the head of this list, or <tt>null</tt> if this list is empty
+     */
+    public E poll() {
+
+        return pollFirst();
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the first element of this list.
+     *
+     * @return the first element of this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E getFirst() throws NoSuchElementException {
+
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return peekFirst();
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the last element of this list.
+     *
+     * @return the last element of this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E getLast() throws NoSuchElementException {
+
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return peekLast();
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the head (first element) of this list.
+     *
+     * @return the head of this list
+     * @throws NoSuchElementException if this list is empty
+     */
+    public E element() throws NoSuchElementException {
+
+        return getFirst();
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the first element of this list, or
+     * returns <tt>null</tt> if this list is empty.
+     *
+     * @return the first element of this list, or <tt>null</tt> if this list
+     *         is empty
+     */
+    public E peekFirst() {
+
+        if (size == 0) {
+            return null;
+        }
+        Node node = firstNode;
+        while (node.numElements == 0) {
+            node = node.next;
+        }
+        return (E) node.elements[slot(node, 0)];
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the last element of this list, or
+     * returns <tt>null</tt> if this list is empty.
+     *
+     * @return the last element of this list, or <tt>null</tt> if this list
+     *         is empty
+     */
+    public E peekLast() {
+
+        if (size == 0) {
+            return null;
+        }
+        Node node = lastNode;
+        while (node.numElements == 0) {
+            node = node.previous;
+        }
+        return (E) node.elements[slot(node, node.numElements - 1)];
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the head (first element) of this list,
+     * or returns <tt>null</tt> if this list is empty.
+     *
+     * @return the head of this list, or <tt>null</tt> if this list is empty
+     */
+    public E peek() {
+
+        return peekFirst();
+
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.
+     *
+     * <p>This method is equivalent to {@link #remove(Object)}.
+     *
+     * @param o element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    public boolean removeFirstOccurrence(Object o) {
+
+        return remove(o);
+
+    }
+
+    /**
+     * Removes the last occurrence of the specified element from this list,
+     * if it is present. The list is searched from the end.
+     *
+     * @param o element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    public boolean removeLastOccurrence(Object o) {
+
+        closeGap();
+        for (Node node = lastNode; node != null; node = node.previous) {
+            for (int ptr = node.numElements - 1; ptr >= 0; ptr--) {
+                Object element = node.elements[node.start + ptr];
+                if (o == null ? element == null : o.equals(element)) {
+                    removeFromNode(node, ptr);
+                    return true;
+                }
+            }
+        }
+        return false;
+
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in reverse
+     * sequential order. The iterator is fail-fast and supports
+     * <tt>remove</tt>, like the iterator returned by
+     * {@link #listIterator(int) listIterator}.
+     *
+     * @return an iterator over the elements in this list in reverse sequence
+     */
+    public Iterator<E> descendingIterator() {
+
+        return new DescendingIterator();
+
+    }
+
+    /**
+     * Returns a reverse-ordered view of this list. The view is an
+     * <tt>UnrolledLinkedList</tt> itself, so that it is both a
+     * {@link List} and a {@link Deque}. All of its methods act on this
+     * list, including the ones that tune it or report statistics, and
+     * changes made through either of them are visible in the other.
+     * Reversing the view returns this list.
+     *
+     * <p>From JDK 21 on this method overrides both <tt>List.reversed</tt>
+     * and <tt>Deque.reversed</tt>. Their return types differ, so a class
+     * that implements both interfaces has to override the method with a
+     * return type that is a subtype of both.
+     *
+     * @return a reverse-ordered view of this list
+     */
+    public UnrolledLinkedList<E> reversed() {
+
+        return new ReverseOrderView<E>(this);
+
+    }
+
+    /**
+     * Returns a list iterator over the elements in this list (in proper
+     * sequence).
+     *
+     * @return a list iterator over the elements in this list (in proper
+     *         sequence)
+     */
+    @Override
+    public ListIterator<E> listIterator() {
+
+        return new ULLIterator(firstNode, 0, 0);
+
+    }
+
+    /**
+     * Returns a list-iterator of the elements in this list (in proper
+     * sequence), starting at the specified position in the list.
+     * Obeys the general contract of <tt>List.listIterator(int)</tt>.<p>
+     *
+     * The list-iterator is <i>fail-fast</i>: if the list is structurally
+     * modified at any time after the Iterator is created, in any way except
+     * through the list-iterator's own <tt>remove</tt> or <tt>add</tt>
+     * methods, the list-iterator will throw a
+     * <tt>ConcurrentModificationException</tt>.  Thus, in the face of
+     * concurrent modification, the iterator fails quickly and cleanly, rather
+     * than risking arbitrary, non-deterministic behavior at an undetermined
+     * time in the future.
+     *
+     * @param index index of the first element to be returned from the
+     *              list-iterator (by a call to <tt>next</tt>)
+     * @return a ListIterator of the elements in this list (in proper
+     *         sequence), starting at the specified position in the list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @see List#listIterator(int)
+     */
+    @Override
+    public ListIterator<E> listIterator(int index) {
+
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException();
+        }
+        NodePosition position = findNode(index);
+        Node node = position.node;
+        int p = position.base;
+        return new ULLIterator(node, index - p, index);
+
+    }
+
+    /**
+     * Returns a view of the portion of this list between the specified
+     * <tt>fromIndex</tt>, inclusive, and <tt>toIndex</tt>, exclusive, with
+     * the semantics of <tt>List.subList</tt>.
+     *
+     * <p>The view remembers the nodes and positions at which its range
+     * starts and ends. Its iterators, <tt>forEach</tt> and <tt>toArray</tt>
+     * read the node arrays from there, and <tt>clear</tt> (and
+     * <tt>removeRange</tt>) removes the whole range at once: the elements in
+     * the boundary nodes are removed with array copies and the nodes in
+     * between are unlinked in one step.
+     *
+     * <p>The view is invalidated by structural modifications of this list
+     * that are not made through the view; it then throws a
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param fromIndex low endpoint (inclusive) of the subList
+     * @param toIndex high endpoint (exclusive) of the subList
+     * @return a view of the specified range within this list
+     * @throws IndexOutOfBoundsException if an endpoint index value is out of
+     *         range <tt>(fromIndex &lt; 0 || toIndex &gt; size)</tt> or the
+     *         endpoints are out of order <tt>(fromIndex &gt; toIndex)</tt>
+     */
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new SubList(null, fromIndex, toIndex - fromIndex);
+
+    }
+
+    /**
+     * Performs the given action for each element of this list, in order.
+     * The node arrays are traversed directly and the list is checked for
+     * concurrent modification once per node.
+     *
+     * @param action the action to be performed for each element
+     * @throws NullPointerException if the specified action is null
+     * @throws ConcurrentModificationException if the list is structurally
+     *         modified by the action
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        int expectedModCount = modCount;
+        for (Node node = firstNode; node != null; node = node.next) {
+            Object[] elements = node.elements;
+            // the elements before the gap, if there is one, and after it
+            int start = node.start;
+            int gapStart = start + node.gapPtr;
+            for (int i = start; i < gapStart; i++) {
+                action.accept((E) elements[i]);
+            }
+            int end = start + node.gapSize + node.numElements;
+            for (int i = gapStart + node.gapSize; i < end; i++) {
+                action.accept((E) elements[i]);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+    }
+
+    /**
+     * Replaces each element of this list with the result of applying the
+     * operator to that element. The node arrays are updated directly and
+     * the list is checked for concurrent modification once per node.
+     *
+     * @param operator the operator to apply to each element
+     * @throws NullPointerException if the specified operator is null
+     * @throws ConcurrentModificationException if the list is structurally
+     *         modified by the operator
+     */
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+
+        if (operator == null) {
+            throw new NullPointerException();
+        }
+        int expectedModCount = modCount;
+        for (Node node = firstNode; node != null; node = node.next) {
+            unshare(node);
+            Object[] elements = node.elements;
+            // the elements before the gap, if there is one, and after it
+            int start = node.start;
+            int gapStart = start + node.gapPtr;
+            for (int i = start; i < gapStart; i++) {
+                elements[i] = operator.apply((E) elements[i]);
+            }
+            int end = start + node.gapSize + node.numElements;
+            for (int i = gapStart + node.gapSize; i < end; i++) {
+                elements[i] = operator.apply((E) elements[i]);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+    }
+
+    /**
+     * Passes the elements of this list to the given consumer one node at a
+     * time, in order. This is the cheapest way to scan the whole list: the
+     * consumer can run a tight loop over each array.
+     *
+     * <p>The arrays passed to the consumer belong to the list. The consumer
+     * may read <tt>elements[from]</tt> to <tt>elements[to - 1]</tt>, but must
+     * neither modify the arrays nor keep references to them. A node with a
+     * gap left by a list iterator is passed as two ranges, the elements
+     * before the gap and those after it.
+     *
+     * @param action the consumer of the node arrays
+     * @throws NullPointerException if the specified consumer is null
+     * @throws ConcurrentModificationException if the list is structurally
+     *         modified by the consumer
+     */
+    public void forEachNode(NodeConsumer action) {
+
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        int expectedModCount = modCount;
+        for (Node node = firstNode; node != null; node = node.next) {
+            int start = node.start;
+            int gapPtr = node.gapPtr;
+            int gapSize = node.gapSize;
+            if (gapSize > 0) {
+                action.accept(node.elements, start, start + gapPtr);
+                start += gapSize;
+            } else {
+                gapPtr = 0;
+            }
+            if (node.numElements > gapPtr) {
+                action.accept(node.elements, start + gapPtr, start + node.numElements);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+    }
+
+    /**
+     * Passes the elements of this list to the given visitor one node at a
+     * time, in order, until the visitor returns <tt>false</tt>. Unlike
+     * {@link #forEachNode(NodeConsumer) forEachNode} it makes no attempt to
+     * detect modifications: it is meant for readers that may race with a
+     * writer and validate what they have read themselves, as
+     * {@link OptimisticUnrolledLinkedList} does. Such a visitor must return
+     * <tt>false</tt> once it notices a modification, since the node chain
+     * may then be inconsistent, and must expect any runtime exception.
+     *
+     * @param visitor the visitor of the node arrays
+     * @return <tt>false</tt> if the visitor stopped the walk
+     */
+    boolean visitNodes(NodeVisitor visitor) {
+
+        for (Node node = firstNode; node != null; node = node.next) {
+            int start = node.start;
+            int gapPtr = node.gapPtr;
+            int gapSize = node.gapSize;
+            if (gapSize > 0) {
+                // visit the elements before and after the gap
+                if (!visitor.visit(node.elements, start, start + gapPtr)) {
+                    return false;
+                }
+                start += gapSize;
+            } else {
+                gapPtr = 0;
+            }
+            if (!visitor.visit(node.elements, start + gapPtr, start + node.numElements)) {
+                return false;
+            }
+        }
+        return true;
+
+    }
+
+    /**
+     * Sorts this list according to the order induced by the specified
+     * {@link Comparator}. The sort is stable.
+     *
+     * <p>The elements are not copied out of the list: every node is sorted
+     * on its own, and then neighbouring runs of nodes are merged pairwise
+     * into full nodes. The nodes that have been read by a merge are reused
+     * for its output, so only a few nodes are allocated.
+     *
+     * @param c the {@code Comparator} used to compare list elements.
+     *          A {@code null} value indicates that the elements'
+     *          {@linkplain Comparable natural ordering} should be used
+     * @throws ClassCastException if the list contains elements that are not
+     *         <i>mutually comparable</i> using the specified comparator
+     */
+    @Override
+    public void sort(Comparator<? super E> c) {
+
+        sortNodes(c, false);
+
+    }
+
+    /**
+     * Sorts this list like {@link #sort(Comparator) sort}, but sorts the
+     * nodes and merges independent runs of nodes in parallel, using the
+     * {@link ForkJoinPool#commonPool() common fork-join pool}.
+     *
+     * @param c the {@code Comparator} used to compare list elements.
+     *          A {@code null} value indicates that the elements'
+     *          {@linkplain Comparable natural ordering} should be used
+     * @throws ClassCastException if the list contains elements that are not
+     *         <i>mutually comparable</i> using the specified comparator
+     */
+    public void parallelSort(Comparator<? super E> c) {
+
+        sortNodes(c, true);
+
+    }
+
+    /**
+     * Returns an immutable snapshot of this list. The snapshot shares the
+     * element arrays of the nodes with this list; the list copies an array
+     * before it modifies it again, so only the nodes that are actually
+     * changed after the snapshot has been taken are ever copied. Taking a
+     * snapshot takes time proportional to the number of nodes, not to the
+     * number of elements.
+     *
+     * <p>The snapshot can be read by any thread without synchronization,
+     * and its iterators never throw {@link ConcurrentModificationException}.
+     *
+     * @return a persistent list with the elements of this list
+     */
+    public PersistentUnrolledList<E> snapshot() {
+
+        int numNodes = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            if (node.numElements > 0) {
+                numNodes++;
+            }
+        }
+        Object[][] arrays = new Object[numNodes][];
+        int[] offsets = new int[numNodes];
+        int[] counts = new int[numNodes];
+        int i = 0;
+        for (Node node = firstNode; node != null; node = node.next) {
+            if (node.numElements > 0) {
+                if (node.gapSize > 0) {
+                    // the elements of a node with a gap are not contiguous,
+                    // so they are copied instead of shared
+                    arrays[i] = new Object[node.numElements];
+                    copyElements(node, 0, arrays[i], 0, node.numElements);
+                } else {
+                    node.shared = true;
+                    arrays[i] = node.elements;
+                    offsets[i] = node.start;
+                }
+                counts[i] = node.numElements;
+                i++;
+            }
+        }
+        return new PersistentUnrolledList<E>(nodeCapacity, arrays, offsets, counts, numNodes);
+
+    }
+
+    /**
+     * Creates a {@link Spliterator} over the elements in this list.
+     *
+     * <p>The spliterator reads the node arrays directly and splits at node
+     * boundaries, handing roughly half of the remaining elements to the new
+     * spliterator, so parallel streams over this list are well balanced.
+     * It reports {@link Spliterator#SIZED}, {@link Spliterator#SUBSIZED} and
+     * {@link Spliterator#ORDERED}. It binds to the list when it is created
+     * and is <i>fail-fast</i>: a structural modification of the list after
+     * that is detected after the next traversal and reported with a
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @return a {@code Spliterator} over the elements in this list
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+
+        return new ULLSpliterator(firstNode, 0, size);
+
+    }
+
+    /**
+     * Returns the node that contains the element at the specified position,
+     * together with the index of its first element. If <tt>index</tt> is
+     * equal to the size of this list, the last node is returned.
+     *
+     * <p>The result is returned rather than stored in a field of the list,
+     * since the read-only operations that call this method may be called
+     * by several threads at once.
+     *
+     * <p>The walk starts at the {@link #finger finger} left by the
+     * previous call if that is closer to the element than either end of the
+     * list, so that accessing the elements in order, or close to each
+     * other, does not walk the list from one of its ends every time. The
+     * node that is found becomes the new finger.
+     *
+     * @param index the index of the element, which must be valid for
+     *              insertion (0 &lt;= index &lt;= size)
+     * @return the node that contains the element at the specified position
+     *         and the index of its first element
+     */
+    private NodePosition findNode(int index) {
+
+        NodePosition position = finger;
+        if (position != null && position.modCount != modCount) {
+            position = null;
+        }
+        Node node = null;
+        int p = 0;
+        if (position != null) {
+            node = position.node;
+            p = position.base;
+            if (index >= p && index < p + node.numElements) {
+                if (statistics != null) {
+                    statistics.accesses++;
+                }
+                return position;
+            }
+        }
+        if (nodeIndex != null && index < size) {
+            position = nodeIndex.find(index);
+            finger = position;
+            return position;
+        }
+        int hops = 0;
+        int distance = Math.min(index, size - index);
+        if (position != null && index < size && Math.abs(index - p) < distance) {
+            if (index >= p) {
+                while (p <= index - node.numElements) {
+                    p += node.numElements;
+                    node = node.next;
+                    hops++;
+                }
+            } else {
+                while (p > index) {
+                    node = node.previous;
+                    p -= node.numElements;
+                    hops++;
+                }
+            }
+        } else if (size - index > index) {
+            p = 0;
+            node = firstNode;
+            while (p <= index - node.numElements) {
+                p += node.numElements;
+                node = node.next;
+                hops++;
+            }
+        } else {
+            node = lastNode;
+            p = size;
+            while ((p -= node.numElements) > index) {
+                node = node.previous;
+                hops++;
+            }
+        }
+        if (statistics != null) {
+            statistics.accesses++;
+            statistics.hops += hops;
+        }
+        position = new NodePosition(node, p, modCount);
+        finger = position;
+        return position;
+
+    }
+
+    /**
+     * Makes the specified node the {@link #finger finger}, valid for the
+     * current <tt>modCount</tt>.
+     *
+     * @param node the node
+     * @param base the index of the first element of the node
+     */
+    private void setFinger(Node node, int base) {
+
+        finger = new NodePosition(node, base, modCount);
+
+    }
+
+    /**
+     * Returns the index of the element at the specified position within a
+     * node, if the node is the valid {@link #finger finger}.
+     *
+     * @param node the node
+     * @param ptr the position among the elements of the node
+     * @return the index of the element in the list, or -1 if the node is not
+     *         the finger
+     */
+    private int fingerIndex(Node node, int ptr) {
+
+        NodePosition position = finger;
+        return (position != null && position.node == node && position.modCount == modCount)
+                ? position.base + ptr : -1;
+
+    }
+
+    private static final long serialVersionUID = -674052309103045211L;
+
+    /**
+     * Saves the state of this list to a stream. The nodes are not
+     * serialized; the elements are written one after the other.
+     *
+     * @serialData The non-transient fields (<tt>nodeCapacity</tt>,
+     *             <tt>splitPolicy</tt>, <tt>mergeThreshold</tt> and
+     *             <tt>nodePoolCapacity</tt>), followed by the size of the
+     *             list (<tt>int</tt>), whether the list is indexed
+     *             (<tt>boolean</tt>) and all of its elements
+     *             (<tt>Object</tt>) in proper sequence.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+        s.writeInt(size);
+        s.writeBoolean(nodeIndex != null);
+        for (Node node = firstNode; node != null; node = node.next) {
+            for (int ptr = 0; ptr < node.numElements; ptr++) {
+                s.writeObject(node.elements[slot(node, ptr)]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+
+    }
+
+    /**
+     * Reconstitutes a list from a stream. The elements are packed into full
+     * nodes.
+     */
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+
+        s.defaultReadObject();
+        int n = s.readInt();
+        boolean indexed = s.readBoolean();
+        if (nodeCapacity < 8) {
+            throw new InvalidObjectException("nodeCapacity < 8");
+        }
+        if (mergeThreshold < 1 || mergeThreshold > nodeCapacity) {
+            throw new InvalidObjectException("mergeThreshold out of range");
+        }
+        if (nodePoolCapacity < 0) {
+            throw new InvalidObjectException("nodePoolCapacity < 0");
+        }
+        if (splitPolicy == null || n < 0) {
+            throw new InvalidObjectException("corrupt list data");
+        }
+        firstNode = new Node();
+        Node node = firstNode;
+        for (int i = 0; i < n; i++) {
+            if (node.numElements == nodeCapacity) {
+                Node newNode = new Node();
+                newNode.previous = node;
+                node.next = newNode;
+                node = newNode;
+            }
+            node.elements[node.numElements++] = s.readObject();
+        }
+        lastNode = node;
+        size = n;
+        if (indexed) {
+            nodeIndex = new NodeIndex();
+            nodeIndex.rebuild();
+        }
+
+    }
+
+    /**
+     * An operation that receives the elements of a list one node at a time.
+     *
+     * @see UnrolledLinkedList#forEachNode(NodeConsumer)
+     */
+    public interface NodeConsumer {
+
+        /**
+         * Processes a range of elements of a node.
+         *
+         * @param elements the element array of the node, which must not be
+         *        modified or retained
+         * @param from the position of the first element in the array
+         * @param to the position after the last element in the array
+         */
+        void accept(Object[] elements, int from, int to);
+
+    }
+
+    /**
+     * A visitor of the node arrays that can stop the walk.
+     *
+     * @see UnrolledLinkedList#visitNodes(NodeVisitor)
+     */
+    interface NodeVisitor {
+
+        /**
+         * Visits the elements of a node.
+         *
+         * @param elements the element array of the node
+         * @param from the position of the first element in the array
+         * @param to the position after the last element in the array
+         * @return <tt>false</tt> if no more nodes should be visited
+         */
+        boolean visit(Object[] elements, int from, int to);
+
+    }
+
+    /**
+     * The ways a full node can be split when an element is inserted into it.
+     */
+    public enum SplitPolicy {
+
+        /**
+         * Moves half of the elements to a new node after the full one.
+         * Both nodes end up half full, which leaves room for further
+         * insertions at random positions.
+         */
+        BALANCED,
+
+        /**
+         * Moves the elements after the insertion point to a new node after
+         * the full one. Inserting at the end of a node starts a new, empty
+         * node, so sequential appends leave full nodes behind.
+         */
+        APPEND,
+
+        /**
+         * Moves the elements before the insertion point to a new node in
+         * front of the full one. Inserting at the start of a node starts a
+         * new, empty node, so sequential prepends leave full nodes behind.
+         */
+        PREPEND,
+
+        /**
+         * Uses {@link #APPEND APPEND} when inserting at the end of the last
+         * node, {@link #PREPEND PREPEND} when inserting at the start of the
+         * first node and {@link #BALANCED BALANCED} otherwise.
+         */
+        ADAPTIVE
+
+    }
+
+    /**
+     * A snapshot of the structure of a list and of the counters of
+     * structural events, as returned by
+     * {@link UnrolledLinkedList#getStatistics() getStatistics}.
+     */
+    public static final class Statistics {
+
+        /**
+         * The number of buckets of the fill histogram.
+         */
+        static final int FILL_BUCKETS = 10;
+
+        private final int size;
+
+        private final int nodeCapacity;
+
+        private final int nodeCount;
+
+        private final int[] fillHistogram;
+
+        private final long splits;
+
+        private final long merges;
+
+        private final long positionalAccesses;
+
+        private final long hops;
+
+        Statistics(int size, int nodeCapacity, int nodeCount, int[] fillHistogram, long splits,
+                long merges, long positionalAccesses, long hops) {
+
+            this.size = size;
+            this.nodeCapacity = nodeCapacity;
+            this.nodeCount = nodeCount;
+            this.fillHistogram = fillHistogram;
+            this.splits = splits;
+            this.merges = merges;
+            this.positionalAccesses = positionalAccesses;
+            this.hops = hops;
+
+        }
+
+        /**
+         * Returns the number of elements in the list.
+         *
+         * @return the size of the list
+         */
+        public int getSize() {
+
+            return size;
+
+        }
+
+        /**
+         * Returns the maximum number of elements of a node.
+         *
+         * @return the node capacity of the list
+         */
+        public int getNodeCapacity() {
+
+            return nodeCapacity;
+
+        }
+
+        /**
+         * Returns the number of nodes of the list.
+         *
+         * @return the number of nodes
+         */
+        public int getNodeCount() {
+
+            return nodeCount;
+
+        }
+
+        /**
+         * Returns the average fraction of the node capacity that is used,
+         * or 0 if the list has no elements.
+         *
+         * @return the average fill factor of the nodes, between 0 and 1
+         */
+        public double getAverageFill() {
+
+            return (size == 0) ? 0.0 : (double) size / ((long) nodeCount * nodeCapacity);
+
+        }
+
+        /**
+         * Returns the number of nodes by how full they are. Element
+         * <tt>i</tt> of the returned array of length 10 counts the nodes
+         * that hold at least <tt>i</tt> tenths of <tt>nodeCapacity</tt>
+         * elements, but fewer than <tt>i + 1</tt> tenths; the last element
+         * also counts the full nodes.
+         *
+         * @return the fill histogram of the nodes
+         */
+        public int[] getFillHistogram() {
+
+            return fillHistogram.clone();
+
+        }
+
+        /**
+         * Returns the number of times a full node has been split.
+         *
+         * @return the number of node splits
+         */
+        public long getSplits() {
+
+            return splits;
+
+        }
+
+        /**
+         * Returns the number of times two neighbouring nodes have been
+         * merged.
+         *
+         * @return the number of node merges
+         */
+        public long getMerges() {
+
+            return merges;
+
+        }
+
+        /**
+         * Returns the number of times the node holding a position has been
+         * looked up, by positional access methods such as <tt>get</tt>,
+         * <tt>set</tt>, <tt>add(int, E)</tt>, <tt>remove(int)</tt> and
+         * <tt>listIterator(int)</tt>.
+         *
+         * @return the number of positional accesses
+         */
+        public long getPositionalAccesses() {
+
+            return positionalAccesses;
+
+        }
+
+        /**
+         * Returns the number of links that positional accesses have
+         * followed: node links if the list walks its nodes, or index links
+         * if the list is indexed.
+         *
+         * @return the number of traversal hops
+         */
+        public long getHops() {
+
+            return hops;
+
+        }
+
+        /**
+         * Returns the average number of hops per positional access, or 0 if
+         * there has been no positional access.
+         *
+         * @return the average number of hops per positional access
+         */
+        public double getAverageHopsPerAccess() {
+
+            return (positionalAccesses == 0) ? 0.0 : (double) hops / positionalAccesses;
+
+        }
+
+        @Override
+        public String toString() {
+
+            return "Statistics[size=" + size + ", nodeCapacity=" + nodeCapacity
+                    + ", nodeCount=" + nodeCount + ", averageFill=" + getAverageFill()
+                    + ", fillHistogram=" + Arrays.toString(fillHistogram)
+                    + ", splits=" + splits + ", merges=" + merges
+                    + ", positionalAccesses=" + positionalAccesses + ", hops=" + hops + "]";
+
+        }
+
+    }
+
+    /**
+     * The management interface of the counters of the statistics of a list.
+     *
+     * @see UnrolledLinkedList#getStatisticsMXBean()
+     */
+    public interface StatisticsMXBean {
+
+        /**
+         * @see UnrolledLinkedList#isStatisticsEnabled()
+         */
+        boolean isStatisticsEnabled();
+
+        /**
+         * @see UnrolledLinkedList#setStatisticsEnabled(boolean)
+         */
+        void setStatisticsEnabled(boolean enabled);
+
+        /**
+         * @see Statistics#getSize()
+         */
+        int getSize();
+
+        /**
+         * @see Statistics#getSplits()
+         */
+        long getSplits();
+
+        /**
+         * @see Statistics#getMerges()
+         */
+        long getMerges();
+
+        /**
+         * @see Statistics#getPositionalAccesses()
+         */
+        long getPositionalAccesses();
+
+        /**
+         * @see Statistics#getHops()
+         */
+        long getHops();
+
+        /**
+         * @see Statistics#getAverageHopsPerAccess()
+         */
+        double getAverageHopsPerAccess();
+
+        /**
+         * @see UnrolledLinkedList#resetStatistics()
+         */
+        void resetStatistics();
+
+    }
+
+    private class Node {
+
+        /**
+         * The next node.
+         */
+        Node next;
+
+        /**
+         * The previous node.
+         */
+        Node previous;
+
+        /**
+         * The number of elements stored in this node.
+         */
+        int numElements = 0;
+
+        /**
+         * The position of the first element in the array. The elements are
+         * stored in <tt>elements[start]</tt> to
+         * <tt>elements[start + numElements - 1]</tt>, so that there may be
+         * free space at both ends of the array.
+         */
+        int start = 0;
+
+        /**
+         * The position among the elements of this node at which there is a
+         * gap of <tt>gapSize</tt> free slots in the array. Only the
+         * {@link UnrolledLinkedList#gapNode gapNode} has a gap.
+         */
+        int gapPtr = 0;
+
+        /**
+         * The number of free slots in the gap, or 0 if this node has no gap.
+         */
+        int gapSize = 0;
+
+        /**
+         * The array in which the elements are stored.
+         */
+        Object[] elements;
+
+        /**
+         * The entry of this node in the node index, if the list is indexed.
+         */
+        IndexEntry indexEntry;
+
+        /**
+         * <tt>true</tt> if the element array is shared with a snapshot and
+         * must be copied before it is modified.
+         */
+        boolean shared;
+
+        /**
+         * Constructs a new node.
+         */
+        Node() {
+
+            elements = new Object[nodeCapacity];
+
+        }
+
+    }
+
+    /**
+     * A node of the list together with the index of its first element, as
+     * returned by {@link UnrolledLinkedList#findNode(int) findNode}, and
+     * the value of <tt>modCount</tt> for which it is valid. The fields are
+     * final, so that a position stored as the
+     * {@link UnrolledLinkedList#finger finger} by one thread is seen as a
+     * whole by the others.
+     */
+    private final class NodePosition {
+
+        /**
+         * The node.
+         */
+        final Node node;
+
+        /**
+         * The index of the first element of the node.
+         */
+        final int base;
+
+        /**
+         * The value of <tt>modCount</tt> when the position was found.
+         */
+        final int modCount;
+
+        NodePosition(Node node, int base, int modCount) {
+
+            this.node = node;
+            this.base = base;
+            this.modCount = modCount;
+
+        }
+
+    }
+
+    /**
+     * An entry of the {@link NodeIndex node index}.
+     */
+    private class IndexEntry {
+
+        /**
+         * The parent entry, or <tt>null</tt> for the root.
+         */
+        IndexEntry parent;
+
+        /**
+         * The left child, covering the nodes that precede this one.
+         */
+        IndexEntry left;
+
+        /**
+         * The right child, covering the nodes that follow this one.
+         */
+        IndexEntry right;
+
+        /**
+         * The node this entry stands for.
+         */
+        Node node;
+
+        /**
+         * The heap priority of this entry.
+         */
+        int priority;
+
+        /**
+         * The number of elements stored in the nodes of this subtree.
+         */
+        int count;
+
+        /**
+         * Constructs a new entry for the specified node.
+         */
+        IndexEntry(Node node, int priority) {
+
+            this.node = node;
+            this.priority = priority;
+            this.count = node.numElements;
+            node.indexEntry = this;
+
+        }
+
+    }
+
+    /**
+     * A counted treap over the nodes of the list. The in-order sequence of
+     * the entries is the order of the nodes, and every entry knows how many
+     * elements its subtree holds, so a node can be found by element index
+     * in logarithmic time. The counts have to be kept in step with
+     * <tt>Node.numElements</tt> by every method that changes it.
+     */
+    private class NodeIndex {
+
+        /**
+         * The root of the treap.
+         */
+        IndexEntry root;
+
+        /**
+         * The state of the pseudo random generator of the priorities.
+         */
+        private int seed = 0x2545F491;
+
+        /**
+         * Returns the node that contains the element at the specified
+         * position, together with the index of its first element.
+         *
+         * @param index the index of the element (0 &lt;= index &lt; size)
+         * @return the node that contains the element and the index of its
+         *         first element
+         */
+        NodePosition find(int index) {
+
+            IndexEntry e = root;
+            int p = 0;
+            int hops = 0;
+            while (true) {
+                int leftCount = (e.left == null) ? 0 : e.left.count;
+                if (index < p + leftCount) {
+                    e = e.left;
+                } else {
+                    p += leftCount;
+                    if (index < p + e.node.numElements) {
+                        if (statistics != null) {
+                            statistics.accesses++;
+                            statistics.hops += hops;
+                        }
+                        return new NodePosition(e.node, p, modCount);
+                    }
+                    p += e.node.numElements;
+                    e = e.right;
+                }
+                hops++;
+            }
+
+        }
+
+        /**
+         * Must be called after the number of elements in the specified node
+         * has been changed by <tt>delta</tt>.
+         */
+        void adjust(Node node, int delta) {
+
+            for (IndexEntry e = node.indexEntry; e != null; e = e.parent) {
+                e.count += delta;
+            }
+
+        }
+
+        /**
+         * Adds a node that has just been linked in after <tt>node</tt>.
+         */
+        void insertAfter(Node node, Node newNode) {
+
+            IndexEntry e = new IndexEntry(newNode, nextPriority());
+            IndexEntry parent = node.indexEntry;
+            if (parent.right == null) {
+                parent.right = e;
+            } else {
+                parent = parent.right;
+                while (parent.left != null) {
+                    parent = parent.left;
+                }
+                parent.left = e;
+            }
+            attach(e, parent);
+
+        }
+
+        /**
+         * Adds a node that has just been linked in before <tt>node</tt>.
+         */
+        void insertBefore(Node node, Node newNode) {
+
+            IndexEntry e = new IndexEntry(newNode, nextPriority());
+            IndexEntry parent = node.indexEntry;
+            if (parent.left == null) {
+                parent.left = e;
+            } else {
+                parent = parent.left;
+                while (parent.right != null) {
+                    parent = parent.right;
+                }
+                parent.right = e;
+            }
+            attach(e, parent);
+
+        }
+
+        /**
+         * Removes a node that is about to be unlinked from the list.
+         */
+        void remove(Node node) {
+
+            IndexEntry e = node.indexEntry;
+            while (e.left != null && e.right != null) {
+                rotateUp(e.left.priority > e.right.priority ? e.left : e.right);
+            }
+            IndexEntry child = (e.left != null) ? e.left : e.right;
+            IndexEntry parent = e.parent;
+            if (child != null) {
+                child.parent = parent;
+            }
+            if (parent == null) {
+                root = child;
+            } else if (parent.left == e) {
+                parent.left = child;
+            } else {
+                parent.right = child;
+            }
+            for (; parent != null; parent = parent.parent) {
+                parent.count -= node.numElements;
+            }
+            node.indexEntry = null;
+
+        }
+
+        /**
+         * Discards the current index and builds a new one from the node
+         * chain in linear time.
+         */
+        void rebuild() {
+
+            // the right spine of the treap built so far
+            ArrayList<IndexEntry> spine = new ArrayList<IndexEntry>();
+            for (Node node = firstNode; node != null; node = node.next) {
+                IndexEntry e = new IndexEntry(node, nextPriority());
+                IndexEntry last = null;
+                while (!spine.isEmpty() && spine.get(spine.size() - 1).priority < e.priority) {
+                    last = spine.remove(spine.size() - 1);
+                }
+                e.left = last;
+                if (last != null) {
+                    last.parent = e;
+                }
+                if (!spine.isEmpty()) {
+                    spine.get(spine.size() - 1).right = e;
+                    e.parent = spine.get(spine.size() - 1);
+                }
+                spine.add(e);
+            }
+            root = spine.get(0);
+            countSubtree(root);
+
+        }
+
+        private int countSubtree(IndexEntry e) {
+
+            if (e == null) {
+                return 0;
+            }
+            e.count = countSubtree(e.left) + e.node.numElements + countSubtree(e.right);
+            return e.count;
+
+        }
+
+        private void attach(IndexEntry e, IndexEntry parent) {
+
+            e.parent = parent;
+            for (; parent != null; parent = parent.parent) {
+                parent.count += e.count;
+            }
+            while (e.parent != null && e.priority > e.parent.priority) {
+                rotateUp(e);
+            }
+
+        }
+
+        /**
+         * Rotates the specified entry above its parent.
+         */
+        private void rotateUp(IndexEntry e) {
+
+            IndexEntry parent = e.parent;
+            IndexEntry grandParent = parent.parent;
+            if (parent.left == e) {
+                parent.left = e.right;
+                if (e.right != null) {
+                    e.right.parent = parent;
+                }
+                e.right = parent;
+            } else {
+                parent.right = e.left;
+                if (e.left != null) {
+                    e.left.parent = parent;
+                }
+                e.left = parent;
+            }
+            parent.parent = e;
+            e.parent = grandParent;
+            if (grandParent == null) {
+                root = e;
+            } else if (grandParent.left == parent) {
+                grandParent.left = e;
+            } else {
+                grandParent.right = e;
+            }
+            e.count = parent.count;
+            parent.count = parent.node.numElements
+                    + ((parent.left == null) ? 0 : parent.left.count)
+                    + ((parent.right == null) ? 0 : parent.right.count);
+
+        }
+
+        private int nextPriority() {
+
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return seed;
+
+        }
+
+    }
+
+    /**
+     * The counters of structural events of a list with enabled statistics.
+     */
+    private static final class StatisticsCounters {
+
+        long splits;
+
+        long merges;
+
+        long accesses;
+
+        long hops;
+
+    }
+
+    /**
+     * The {@link StatisticsMXBean} of this list.
+     */
+    private class StatisticsBean implements StatisticsMXBean {
+
+        public boolean isStatisticsEnabled() {
+
+            return UnrolledLinkedList.this.isStatisticsEnabled();
+
+        }
+
+        public void setStatisticsEnabled(boolean enabled) {
+
+            UnrolledLinkedList.this.setStatisticsEnabled(enabled);
+
+        }
+
+        public int getSize() {
+
+            return size;
+
+        }
+
+        public long getSplits() {
+
+            StatisticsCounters counters = statistics;
+            return (counters == null) ? 0 : counters.splits;
+
+        }
+
+        public long getMerges() {
+
+            StatisticsCounters counters = statistics;
+            return (counters == null) ? 0 : counters.merges;
+
+        }
+
+        public long getPositionalAccesses() {
+
+            StatisticsCounters counters = statistics;
+            return (counters == null) ? 0 : counters.accesses;
+
+        }
+
+        public long getHops() {
+
+            StatisticsCounters counters = statistics;
+            return (counters == null) ? 0 : counters.hops;
+
+        }
+
+        public double getAverageHopsPerAccess() {
+
+            StatisticsCounters counters = statistics;
+            return (counters == null || counters.accesses == 0) ? 0.0
+                    : (double) counters.hops / counters.accesses;
+
+        }
+
+        public void resetStatistics() {
+
+            UnrolledLinkedList.this.resetStatistics();
+
+        }
+
+    }
+
+    private class ULLSpliterator implements Spliterator<E> {
+
+        /**
+         * The node of the next element.
+         */
+        Node node;
+
+        /**
+         * The position of the next element within <tt>node</tt>.
+         */
+        int ptr;
+
+        /**
+         * The number of elements left to be traversed.
+         */
+        int remaining;
+
+        private int expectedModCount = modCount;
+
+        ULLSpliterator(Node node, int ptr, int remaining) {
+
+            this.node = node;
+            this.ptr = ptr;
+            this.remaining = remaining;
+
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (remaining == 0) {
+                return false;
+            }
+            if (ptr >= node.numElements) {
+                node = node.next;
+                ptr = 0;
+            }
+            E element = (E) node.elements[slot(node, ptr++)];
+            remaining--;
+            action.accept(element);
+            checkForModification();
+            return true;
+
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Node n = node;
+            int p = ptr;
+            int left = remaining;
+            while (left > 0) {
+                if (p >= n.numElements) {
+                    n = n.next;
+                    p = 0;
+                }
+                Object[] elements = n.elements;
+                int start = n.start;
+                int end = Math.min(n.numElements, p + left);
+                left -= end - p;
+                // the elements before the gap, if there is one, and after it
+                int gapPtr = Math.min(n.gapPtr, end);
+                for (; p < gapPtr; p++) {
+                    action.accept((E) elements[start + p]);
+                }
+                start += n.gapSize;
+                for (; p < end; p++) {
+                    action.accept((E) elements[start + p]);
+                }
+            }
+            node = n;
+            ptr = p;
+            remaining = 0;
+            checkForModification();
+
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+
+            checkForModification();
+            // the prefix ends with a whole node, so it must not cover
+            // all of the remaining elements
+            int prefix = node.numElements - ptr;
+            if (prefix >= remaining) {
+                return null;
+            }
+            Node last = node;
+            int half = remaining / 2;
+            while (prefix < half) {
+                Node next = last.next;
+                if (prefix + next.numElements >= remaining) {
+                    break;
+                }
+                last = next;
+                prefix += next.numElements;
+            }
+            ULLSpliterator split = new ULLSpliterator(node, ptr, prefix);
+            split.expectedModCount = expectedModCount;
+            node = last.next;
+            ptr = 0;
+            remaining -= prefix;
+            return split;
+
+        }
+
+        @Override
+        public long estimateSize() {
+
+            return remaining;
+
+        }
+
+        @Override
+        public int characteristics() {
+
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+
+        }
+
+        private void checkForModification() {
+
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+        }
+
+    }
+
+    private class ULLIterator implements ListIterator<E> {
+
+        /**
+         * The node of the element to be returned by the next call to
+         * <tt>next</tt>.
+         */
+        Node currentNode;
+
+        /**
+         * The position of that element within <tt>currentNode</tt>. It is
+         * equal to <tt>currentNode.numElements</tt> if the element is the
+         * first one of the next node.
+         */
+        int ptr;
+
+        /**
+         * The index of that element.
+         */
+        int index;
+
+        /**
+         * The node of the element returned by the last call to <tt>next</tt>
+         * or <tt>previous</tt>, or <tt>null</tt> if there is no such element
+         * or it has been removed.
+         */
+        Node lastNode;
+
+        /**
+         * The position of that element within <tt>lastNode</tt>.
+         */
+        int lastPtr;
+
+        /**
+         * The index of that element.
+         */
+        int lastIndex;
+
+        private int expectedModCount = modCount;
+
+        ULLIterator(Node node, int ptr, int index) {
+
+            this.currentNode = node;
+            this.ptr = ptr;
+            this.index = index;
+
+        }
+
+        @Override
+        public boolean hasNext() {
+
+            return (index < size);
+
+        }
+
+        @Override
+        public E next() {
+
+            checkForModification();
+            if (index >= size) {
+                throw new NoSuchElementException();
+            }
+            if (ptr >= currentNode.numElements) {
+                currentNode = currentNode.next;
+                ptr = 0;
+            }
+            lastNode = currentNode;
+            lastPtr = ptr;
+            lastIndex = index;
+            ptr++;
+            index++;
+            return (E) lastNode.elements[slot(lastNode, lastPtr)];
+
+        }
+
+        @Override
+        public boolean hasPrevious() {
+
+            return (index > 0);
+
+        }
+
+        @Override
+        public E previous() {
+
+            checkForModification();
+            if (index <= 0) {
+                throw new NoSuchElementException();
+            }
+            if (ptr == 0) {
+                currentNode = currentNode.previous;
+                ptr = currentNode.numElements;
+            }
+            ptr--;
             index--;
+            lastNode = currentNode;
+            lastPtr = ptr;
+            lastIndex = index;
+            return (E) lastNode.elements[slot(lastNode, lastPtr)];
+
+        }
+
+        @Override
+        public int nextIndex() {
+
+            return index;
+
+        }
+
+        @Override
+        public int previousIndex() {
+
+            return (index - 1);
+
+        }
+
+        @Override
+        public void remove() {
+
+            if (lastNode == null) {
+                throw new IllegalStateException();
+            }
+            checkForModification();
+            Node previousNode = lastNode.previous;
+            int previousCount = (previousNode == null) ? 0 : previousNode.numElements;
+            removeFromNode(lastNode, lastPtr, true);
+            // the element after the removed one took its place,
+            // unless the node has been merged into the previous one
+            if (previousNode != null && previousNode.next != lastNode) {
+                currentNode = previousNode;
+                ptr = previousCount + lastPtr;
+            } else {
+                currentNode = lastNode;
+                ptr = lastPtr;
+            }
+            index = lastIndex;
+            lastNode = null;
+            expectedModCount = modCount;
+
+        }
+
+        @Override
+        public void set(E e) {
+
+            if (lastNode == null) {
+                throw new IllegalStateException();
+            }
+            checkForModification();
+            unshare(lastNode);
+            lastNode.elements[slot(lastNode, lastPtr)] = e;
+
+        }
+
+        @Override
+        public void add(E e) {
+
+            checkForModification();
+            currentNode = insertIntoNode(currentNode, ptr, e, true);
+            ptr = insertedPtr + 1;
+            index++;
+            lastNode = null;
+            expectedModCount = modCount;
+
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+
+            forEachRemaining(action, size);
+
+        }
+
+        /**
+         * Performs the given action for the remaining elements before the
+         * specified index.
+         */
+        void forEachRemaining(Consumer<? super E> action, int endIndex) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Node node = currentNode;
+            int p = ptr;
+            int i = index;
+            while (i < endIndex) {
+                if (p >= node.numElements) {
+                    node = node.next;
+                    p = 0;
+                }
+                Object[] elements = node.elements;
+                int start = node.start;
+                int end = Math.min(node.numElements, p + endIndex - i);
+                i += end - p;
+                // the elements before the gap, if there is one, and after it
+                int gapPtr = Math.min(node.gapPtr, end);
+                for (; p < gapPtr; p++) {
+                    action.accept((E) elements[start + p]);
+                }
+                start += node.gapSize;
+                for (; p < end; p++) {
+                    action.accept((E) elements[start + p]);
+                }
+                checkForModification();
+            }
+            if (i > index) {
+                lastNode = node;
+                lastPtr = p - 1;
+                lastIndex = i - 1;
+            }
+            currentNode = node;
+            ptr = p;
+            index = i;
+
+        }
+
+        private void checkForModification() {
+
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+        }
+
+    }
+
+    /**
+     * An iterator that walks the list backwards with a list iterator.
+     */
+    private class DescendingIterator implements Iterator<E> {
+
+        private final ListIterator<E> iterator = listIterator(size);
+
+        @Override
+        public boolean hasNext() {
+
+            return iterator.hasPrevious();
+
+        }
+
+        @Override
+        public E next() {
+
+            return iterator.previous();
+
+        }
+
+        @Override
+        public void remove() {
+
+            iterator.remove();
+
+        }
+
+    }
+
+    /**
+     * A reverse-ordered view of a list. The element at index <tt>i</tt> of
+     * the view is the element at index <tt>size() - 1 - i</tt> of the list,
+     * and the list iterators of the view walk list iterators of the list
+     * backwards.
+     */
+    private static class ReversedList<E> extends AbstractList<E> {
+
+        /**
+         * The list in reverse order.
+         */
+        final List<E> list;
+
+        ReversedList(List<E> list) {
+
+            this.list = list;
+
+        }
+
+        @Override
+        public int size() {
+
+            return list.size();
+
+        }
+
+        @Override
+        public boolean contains(Object o) {
+
+            return list.contains(o);
+
+        }
+
+        @Override
+        public E get(int index) {
+
+            return list.get(listIndex(index));
+
+        }
+
+        @Override
+        public E set(int index, E element) {
+
+            return list.set(listIndex(index), element);
+
+        }
+
+        @Override
+        public void add(int index, E element) {
+
+            int n = list.size();
+            if (index < 0 || index > n) {
+                throw new IndexOutOfBoundsException();
+            }
+            list.add(n - index, element);
+
+        }
+
+        @Override
+        public E remove(int index) {
+
+            return list.remove(listIndex(index));
+
+        }
+
+        @Override
+        public int indexOf(Object o) {
+
+            int i = list.lastIndexOf(o);
+            return (i < 0) ? -1 : list.size() - 1 - i;
+
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+
+            int i = list.indexOf(o);
+            return (i < 0) ? -1 : list.size() - 1 - i;
+
+        }
+
+        @Override
+        public void clear() {
+
+            list.clear();
+
+        }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+
+            int n = list.size();
+            list.subList(n - toIndex, n - fromIndex).clear();
+
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+
+            return listIterator(0);
+
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+
+            int n = list.size();
+            if (index < 0 || index > n) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new ReversedListIterator(list.listIterator(n - index));
+
+        }
+
+        /**
+         * Returns the index in the list of the element at the specified
+         * index of the view.
+         */
+        private int listIndex(int index) {
+
+            int n = list.size();
+            if (index < 0 || index >= n) {
+                throw new IndexOutOfBoundsException();
+            }
+            return n - 1 - index;
+
+        }
+
+        /**
+         * A list iterator of the view, which moves a list iterator of the
+         * list in the opposite direction.
+         */
+        private class ReversedListIterator implements ListIterator<E> {
+
+            private final ListIterator<E> iterator;
+
+            /**
+             * <tt>true</tt> if an element has been returned by <tt>next</tt>
+             * or <tt>previous</tt> and has neither been removed nor been
+             * followed by an <tt>add</tt> since.
+             */
+            private boolean returned;
+
+            ReversedListIterator(ListIterator<E> iterator) {
+
+                this.iterator = iterator;
+
+            }
+
+            @Override
+            public boolean hasNext() {
+
+                return iterator.hasPrevious();
+
+            }
+
+            @Override
+            public E next() {
+
+                E element = iterator.previous();
+                returned = true;
+                return element;
+
+            }
+
+            @Override
+            public boolean hasPrevious() {
+
+                return iterator.hasNext();
+
+            }
+
+            @Override
+            public E previous() {
+
+                E element = iterator.next();
+                returned = true;
+                return element;
+
+            }
+
+            @Override
+            public int nextIndex() {
+
+                return list.size() - iterator.nextIndex();
+
+            }
+
+            @Override
+            public int previousIndex() {
+
+                return nextIndex() - 1;
+
+            }
+
+            @Override
+            public void remove() {
+
+                if (!returned) {
+                    throw new IllegalStateException();
+                }
+                iterator.remove();
+                returned = false;
+
+            }
+
+            @Override
+            public void set(E e) {
+
+                if (!returned) {
+                    throw new IllegalStateException();
+                }
+                iterator.set(e);
+
+            }
+
+            @Override
+            public void add(E e) {
+
+                // the new element has to end up after the cursor of the
+                // list iterator, which is before the cursor of the view
+                iterator.add(e);
+                iterator.previous();
+                returned = false;
+
+            }
+
+        }
+
+    }
+
+    /**
+     * The reverse-ordered view of a list returned by
+     * {@link UnrolledLinkedList#reversed() reversed}. Like the view that
+     * <tt>java.util.LinkedList</tt> returns, it is a subclass of the list
+     * class, so every public method of <tt>UnrolledLinkedList</tt> is
+     * overridden to act on the list; the nodes the view inherits stay
+     * empty. The positional operations go through a {@link ReversedList},
+     * the operations at the ends are those at the opposite ends of the
+     * list.
+     */
+    private static final class ReverseOrderView<E> extends UnrolledLinkedList<E> {
+
+        /**
+         * The list in reverse order.
+         */
+        private final UnrolledLinkedList<E> list;
+
+        /**
+         * The reverse-ordered view of the positional operations.
+         */
+        private final ReversedList<E> view;
+
+        ReverseOrderView(UnrolledLinkedList<E> list) {
+
+            super(list.nodeCapacity);
+            this.list = list;
+            this.view = new ReversedList<E>(list);
+
+        }
+
+        @Override
+        public UnrolledLinkedList<E> reversed() {
+
+            return list;
+
+        }
+
+        @Override
+        public SplitPolicy getSplitPolicy() {
+
+            return list.getSplitPolicy();
+
+        }
+
+        @Override
+        public void setSplitPolicy(SplitPolicy splitPolicy) {
+
+            list.setSplitPolicy(splitPolicy);
+
+        }
+
+        @Override
+        public int getMergeThreshold() {
+
+            return list.getMergeThreshold();
+
+        }
+
+        @Override
+        public void setMergeThreshold(int mergeThreshold) {
+
+            list.setMergeThreshold(mergeThreshold);
+
+        }
+
+        @Override
+        public long compact() {
+
+            return list.compact();
+
+        }
+
+        @Override
+        public long compact(double fillFactor) {
+
+            return list.compact(fillFactor);
+
+        }
+
+        @Override
+        public long trimToSize() {
+
+            return list.trimToSize();
+
+        }
+
+        @Override
+        public int getNodePoolCapacity() {
+
+            return list.getNodePoolCapacity();
+
+        }
+
+        @Override
+        public void setNodePoolCapacity(int nodePoolCapacity) {
+
+            list.setNodePoolCapacity(nodePoolCapacity);
+
+        }
+
+        @Override
+        public long getNodePoolHits() {
+
+            return list.getNodePoolHits();
+
+        }
+
+        @Override
+        public long getNodePoolMisses() {
+
+            return list.getNodePoolMisses();
+
+        }
+
+        @Override
+        public double getNodePoolHitRate() {
+
+            return list.getNodePoolHitRate();
+
+        }
+
+        @Override
+        public boolean isStatisticsEnabled() {
+
+            return list.isStatisticsEnabled();
+
+        }
+
+        @Override
+        public void setStatisticsEnabled(boolean enabled) {
+
+            list.setStatisticsEnabled(enabled);
+
+        }
+
+        @Override
+        public void resetStatistics() {
+
+            list.resetStatistics();
+
+        }
+
+        @Override
+        public Statistics getStatistics() {
+
+            return list.getStatistics();
+
+        }
+
+        @Override
+        public StatisticsMXBean getStatisticsMXBean() {
+
+            return list.getStatisticsMXBean();
+
+        }
+
+        @Override
+        public int size() {
+
+            return list.size();
+
+        }
+
+        @Override
+        public boolean isEmpty() {
+
+            return list.isEmpty();
+
+        }
+
+        @Override
+        public boolean contains(Object o) {
+
+            return list.contains(o);
+
+        }
+
+        @Override
+        public boolean containsAll(Collection<?> c) {
+
+            return list.containsAll(c);
+
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+
+            return list.descendingIterator();
+
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+
+            return list.iterator();
+
+        }
+
+        @Override
+        public ListIterator<E> listIterator() {
+
+            return view.listIterator(0);
+
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+
+            return view.listIterator(index);
+
+        }
+
+        @Override
+        public Object[] toArray() {
+
+            Object[] a = list.toArray();
+            reverse(a, a.length);
+            return a;
+
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+
+            int n = list.size();
+            T[] result = list.toArray(a);
+            reverse(result, n);
+            return result;
+
+        }
+
+        @Override
+        public boolean add(E e) {
+
+            list.addFirst(e);
+            return true;
+
+        }
+
+        @Override
+        public boolean remove(Object o) {
+
+            return list.removeLastOccurrence(o);
+
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> c) {
+
+            return list.addAll(0, reversedCopy(c));
+
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends E> c) {
+
+            int n = list.size();
+            if (index < 0 || index > n) {
+                throw new IndexOutOfBoundsException();
+            }
+            return list.addAll(n - index, reversedCopy(c));
+
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+
+            return list.removeAll(c);
+
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+
+            return list.retainAll(c);
+
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super E> filter) {
+
+            return list.removeIf(filter);
+
+        }
+
+        @Override
+        public void clear() {
+
+            list.clear();
+
+        }
+
+        @Override
+        public void removeRange(int fromIndex, int toIndex) {
+
+            int n = list.size();
+            if (fromIndex < 0 || toIndex > n || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException();
+            }
+            list.removeRange(n - toIndex, n - fromIndex);
+
+        }
+
+        @Override
+        public void truncate(int newSize) {
+
+            int n = list.size();
+            if (newSize < 0 || newSize > n) {
+                throw new IndexOutOfBoundsException();
+            }
+            list.removeRange(0, n - newSize);
+
+        }
+
+        @Override
+        public E get(int index) {
+
+            return view.get(index);
+
+        }
+
+        @Override
+        public E set(int index, E element) {
+
+            return view.set(index, element);
+
+        }
+
+        @Override
+        public void add(int index, E element) {
+
+            view.add(index, element);
+
+        }
+
+        @Override
+        public E remove(int index) {
+
+            return view.remove(index);
+
+        }
+
+        @Override
+        public int indexOf(Object o) {
+
+            return view.indexOf(o);
+
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+
+            return view.lastIndexOf(o);
+
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+
+            int n = list.size();
+            if (fromIndex < 0 || toIndex > n || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException();
+            }
+            return new ReversedList<E>(list.subList(n - toIndex, n - fromIndex));
+
+        }
+
+        @Override
+        public void addFirst(E e) {
+
+            list.addLast(e);
+
+        }
+
+        @Override
+        public void addLast(E e) {
+
+            list.addFirst(e);
+
+        }
+
+        @Override
+        public boolean offerFirst(E e) {
+
+            return list.offerLast(e);
+
+        }
+
+        @Override
+        public boolean offerLast(E e) {
+
+            return list.offerFirst(e);
+
+        }
+
+        @Override
+        public boolean offer(E e) {
+
+            return list.offerFirst(e);
+
+        }
+
+        @Override
+        public void push(E e) {
+
+            list.addLast(e);
+
+        }
+
+        @Override
+        public E removeFirst() {
+
+            return list.removeLast();
+
+        }
+
+        @Override
+        public E removeLast() {
+
+            return list.removeFirst();
+
+        }
+
+        @Override
+        public E remove() {
+
+            return list.removeLast();
+
+        }
+
+        @Override
+        public E pop() {
+
+            return list.removeLast();
+
+        }
+
+        @Override
+        public E pollFirst() {
+
+            return list.pollLast();
+
+        }
+
+        @Override
+        public E pollLast() {
+
+            return list.pollFirst();
+
+        }
+
+        @Override
+        public E poll() {
+
+            return list.pollLast();
+
+        }
+
+        @Override
+        public E getFirst() {
+
+            return list.getLast();
+
+        }
+
+        @Override
+        public E getLast() {
+
+            return list.getFirst();
+
+        }
+
+        @Override
+        public E element() {
+
+            return list.getLast();
+
+        }
+
+        @Override
+        public E peekFirst() {
+
+            return list.peekLast();
+
+        }
+
+        @Override
+        public E peekLast() {
+
+            return list.peekFirst();
+
+        }
+
+        @Override
+        public E peek() {
+
+            return list.peekLast();
+
+        }
+
+        @Override
+        public boolean removeFirstOccurrence(Object o) {
+
+            return list.removeLastOccurrence(o);
+
+        }
+
+        @Override
+        public boolean removeLastOccurrence(Object o) {
+
+            return list.removeFirstOccurrence(o);
+
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            for (Iterator<E> it = list.descendingIterator(); it.hasNext();) {
+                action.accept(it.next());
+            }
+
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<E> operator) {
+
+            list.replaceAll(operator);
+
+        }
+
+        /**
+         * Passes all elements of the view to the consumer as one range of
+         * an array, since the node arrays hold them in the opposite order.
+         */
+        @Override
+        public void forEachNode(NodeConsumer action) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            Object[] a = toArray();
+            if (a.length > 0) {
+                action.accept(a, 0, a.length);
+            }
+
+        }
+
+        @Override
+        public void sort(Comparator<? super E> c) {
+
+            Object[] a = toArray();
+            Arrays.sort(a, (Comparator) c);
+            setAll(a);
+
+        }
+
+        @Override
+        public void parallelSort(Comparator<? super E> c) {
+
+            Object[] a = toArray();
+            Arrays.parallelSort(a, (Comparator) c);
+            setAll(a);
+
+        }
+
+        @Override
+        public PersistentUnrolledList<E> snapshot() {
+
+            return PersistentUnrolledList.of(list.nodeCapacity, this);
+
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+
+            return Spliterators.spliterator(this, Spliterator.ORDERED);
+
+        }
+
+        /**
+         * Replaces the elements of the view, in order, with those of the
+         * specified array.
+         */
+        private void setAll(Object[] a) {
+
+            ListIterator<E> it = listIterator();
+            for (Object element : a) {
+                it.next();
+                it.set((E) element);
+            }
+
+        }
+
+        /**
+         * Returns the elements of the specified collection in reverse order.
+         */
+        private List<E> reversedCopy(Collection<? extends E> c) {
+
+            Object[] a = c.toArray();
+            reverse(a, a.length);
+            return (List<E>) Arrays.asList(a);
+
+        }
+
+        /**
+         * Reverses the order of the first <tt>n</tt> elements of an array.
+         */
+        private static void reverse(Object[] a, int n) {
+
+            for (int i = 0, j = n - 1; i < j; i++, j--) {
+                Object t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+
+        }
+
+        /**
+         * Serializes a copy of the view instead of the view, since the
+         * elements are held by the list.
+         */
+        private Object writeReplace() {
+
+            UnrolledLinkedList<E> copy = new UnrolledLinkedList<E>(list.nodeCapacity);
+            copy.addAll(this);
+            return copy;
+
+        }
+
+        private static final long serialVersionUID = 4416853497301519764L;
+
+    }
+
+    /**
+     * A view of a range of the list, as returned by
+     * {@link UnrolledLinkedList#subList(int, int) subList}. The range is
+     * given by the index of its first element and its size; the nodes and
+     * positions of its first element and of the element after it are looked
+     * up when needed and kept until the list is modified.
+     */
+    private class SubList extends AbstractList<E> {
+
+        /**
+         * The sublist this one has been created from, or <tt>null</tt> if it
+         * has been created from the list itself.
+         */
+        private final SubList parent;
+
+        /**
+         * The index of the first element of the range in the list.
+         */
+        private final int offset;
+
+        /**
+         * The number of elements in the range.
+         */
+        private int size;
+
+        /**
+         * The node of the first element of the range.
+         */
+        private Node startNode;
+
+        /**
+         * The position of the first element within <tt>startNode</tt>.
+         */
+        private int startPtr;
+
+        /**
+         * The node of the element after the range.
+         */
+        private Node endNode;
+
+        /**
+         * The position of the element after the range within
+         * <tt>endNode</tt>.
+         */
+        private int endPtr;
+
+        /**
+         * The modification count of the list for which <tt>startNode</tt> and
+         * <tt>endNode</tt> are valid.
+         */
+        private int boundsModCount;
+
+        SubList(SubList parent, int offset, int size) {
+
+            this.parent = parent;
+            this.offset = offset;
+            this.size = size;
+            this.modCount = UnrolledLinkedList.this.modCount;
+
+        }
+
+        @Override
+        public int size() {
+
+            checkForModification();
+            return size;
+
+        }
+
+        @Override
+        public E get(int index) {
+
+            checkIndex(index);
+            checkForModification();
+            return UnrolledLinkedList.this.get(offset + index);
+
+        }
+
+        @Override
+        public E set(int index, E element) {
+
+            checkIndex(index);
+            checkForModification();
+            return UnrolledLinkedList.this.set(offset + index, element);
+
+        }
+
+        @Override
+        public void add(int index, E element) {
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            checkForModification();
+            UnrolledLinkedList.this.add(offset + index, element);
+            updateSize(1);
+
+        }
+
+        @Override
+        public E remove(int index) {
+
+            checkIndex(index);
+            checkForModification();
+            E element = UnrolledLinkedList.this.remove(offset + index);
+            updateSize(-1);
+            return element;
+
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> c) {
+
+            return addAll(size, c);
+
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends E> c) {
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            checkForModification();
+            int oldSize = UnrolledLinkedList.this.size;
+            UnrolledLinkedList.this.addAll(offset + index, c);
+            int added = UnrolledLinkedList.this.size - oldSize;
+            updateSize(added);
+            return (added > 0);
+
+        }
+
+        @Override
+        public void clear() {
+
+            removeRange(0, size);
+
+        }
+
+        /**
+         * Removes the elements of the view from <tt>fromIndex</tt> to
+         * <tt>toIndex - 1</tt> at once.
+         */
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+
+            checkForModification();
+            if (fromIndex < toIndex) {
+                Node node;
+                int ptr;
+                if (fromIndex == 0) {
+                    locateBounds();
+                    node = startNode;
+                    ptr = startPtr;
+                } else {
+                    NodePosition position = findNode(offset + fromIndex);
+                    node = position.node;
+                    ptr = offset + fromIndex - position.base;
+                }
+                removeElements(node, ptr, toIndex - fromIndex);
+                updateSize(fromIndex - toIndex);
+            }
+
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+
+            return listIterator(0);
+
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            checkForModification();
+            locateBounds();
+            if (index == 0) {
+                return new SubListIterator(startNode, startPtr, offset);
+            }
+            if (index == size) {
+                return new SubListIterator(endNode, endPtr, offset + size);
+            }
+            NodePosition position = findNode(offset + index);
+            return new SubListIterator(position.node, offset + index - position.base, offset + index);
+
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+
+            if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException();
+            }
+            checkForModification();
+            return new SubList(this, offset + fromIndex, toIndex - fromIndex);
+
+        }
+
+        /**
+         * Performs the given action for each element of the view, reading
+         * the node arrays from the first element of the range.
+         */
+        @Override
+        public void forEach(Consumer<? super E> action) {
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
             checkForModification();
-            return (E) currentNode.elements[ptr];
+            locateBounds();
+            new SubListIterator(startNode, startPtr, offset).forEachRemaining(action);
+
+        }
+
+        @Override
+        public Object[] toArray() {
+
+            checkForModification();
+            locateBounds();
+            Object[] a = new Object[size];
+            Node node = startNode;
+            int p = startPtr;
+            int i = 0;
+            while (i < size) {
+                if (p >= node.numElements) {
+                    node = node.next;
+                    p = 0;
+                }
+                int n = Math.min(node.numElements - p, size - i);
+                copyElements(node, p, a, i, n);
+                i += n;
+                p += n;
+            }
+            return a;
+
+        }
+
+        /**
+         * Looks up the nodes at which the range starts and ends, unless they
+         * are still known.
+         */
+        private void locateBounds() {
+
+            if (startNode == null || boundsModCount != UnrolledLinkedList.this.modCount) {
+                NodePosition position = findNode(offset);
+                startNode = position.node;
+                startPtr = offset - position.base;
+                position = findNode(offset + size);
+                endNode = position.node;
+                endPtr = offset + size - position.base;
+                boundsModCount = UnrolledLinkedList.this.modCount;
+            }
+
+        }
+
+        /**
+         * Must be called after the size of the range has been changed by
+         * <tt>delta</tt> through this view; the sizes of the views this one
+         * has been created from change as well.
+         */
+        private void updateSize(int delta) {
+
+            for (SubList list = this; list != null; list = list.parent) {
+                list.size += delta;
+                list.modCount = UnrolledLinkedList.this.modCount;
+            }
+
+        }
+
+        private void checkIndex(int index) {
+
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException();
+            }
+
+        }
+
+        private void checkForModification() {
+
+            if (UnrolledLinkedList.this.modCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+
+        }
+
+        /**
+         * A list iterator over the range, which keeps the size of the view
+         * up to date when it adds or removes elements.
+         */
+        private class SubListIterator extends ULLIterator {
+
+            SubListIterator(Node node, int ptr, int index) {
+
+                super(node, ptr, index);
+
+            }
+
+            @Override
+            public boolean hasNext() {
+
+                return (index < offset + size);
+
+            }
+
+            @Override
+            public E next() {
+
+                if (index >= offset + size) {
+                    throw new NoSuchElementException();
+                }
+                return super.next();
+
+            }
+
+            @Override
+            public boolean hasPrevious() {
+
+                return (index > offset);
+
+            }
+
+            @Override
+            public E previous() {
+
+                if (index <= offset) {
+                    throw new NoSuchElementException();
+                }
+                return super.previous();
+
+            }
+
+            @Override
+            public int nextIndex() {
+
+                return (index - offset);
+
+            }
+
+            @Override
+            public int previousIndex() {
+
+                return (index - offset - 1);
+
+            }
+
+            @Override
+            public void remove() {
+
+                super.remove();
+                updateSize(-1);
+
+            }
+
+            @Override
+            public void add(E e) {
+
+                super.add(e);
+                updateSize(1);
+
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super E> action) {
+
+                forEachRemaining(action, offset + size);
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Insert an element into the specified node. If the node is already full,
+     * it is split according to the {@link #getSplitPolicy() split policy}:
+     * a new node will be created and inserted into the list next to
+     * the specified node.
+     *
+     * @param node
+     * @param ptr the position at which the element should be inserted
+     *            among the elements of the node
+     * @param element the element to be inserted
+     * @return the node into which the element has been inserted; the
+     *         position of the element within it is stored in
+     *         {@link #insertedPtr insertedPtr}
+     */
+    private Node insertIntoNode(Node node, int ptr, E element) {
+
+        return insertIntoNode(node, ptr, element, false);
+
+    }
+
+    /**
+     * Insert an element into the specified node, like
+     * {@link #insertIntoNode(Node, int, Object) insertIntoNode}. If the
+     * element is inserted by a list iterator, the free slots of the node are
+     * gathered in a gap at the insertion point, so that the following
+     * insertions at the iterator position do not move any elements.
+     *
+     * @param node
+     * @param ptr the position at which the element should be inserted
+     *            among the elements of the node
+     * @param element the element to be inserted
+     * @param cursor whether the element is inserted by a list iterator
+     * @return the node into which the element has been inserted
+     */
+    private Node insertIntoNode(Node node, int ptr, E element, boolean cursor) {
+
+        unshare(node);
+        // the index of the new element, if the finger is on this node
+        int index = fingerIndex(node, ptr);
+        if (node.gapSize > 0) {
+            insertIntoGap(node, ptr, element);
+            if (index >= 0) {
+                setFinger(node, index - insertedPtr);
+            }
+            return node;
+        }
+        // if the node is full
+        if (node.numElements == nodeCapacity) {
+            SplitPolicy policy = splitPolicy;
+            if (policy == SplitPolicy.ADAPTIVE) {
+                if (node == lastNode && ptr == node.numElements) {
+                    policy = SplitPolicy.APPEND;
+                } else if (node == firstNode && ptr == 0) {
+                    policy = SplitPolicy.PREPEND;
+                } else {
+                    policy = SplitPolicy.BALANCED;
+                }
+            }
+            if (statistics != null) {
+                statistics.splits++;
+            }
+            // create a new node
+            Node newNode = newNode();
+            if (policy == SplitPolicy.PREPEND) {
+                // move the elements before the insertion point to a new
+                // node in front of this one; the free space they leave
+                // behind is the new start of this node
+                int elementsToMove = ptr;
+                System.arraycopy(node.elements, 0, newNode.elements, 0, elementsToMove);
+                for (int i = 0; i < elementsToMove; i++) {
+                    node.elements[i] = null;
+                }
+                node.start = elementsToMove;
+                node.numElements -= elementsToMove;
+                newNode.numElements = elementsToMove;
+                if (nodeIndex != null) {
+                    nodeIndex.adjust(node, -elementsToMove);
+                }
+                linkBefore(node, newNode);
+                // the element goes to the front of the original node,
+                // unless no elements have been moved
+                if (elementsToMove == 0) {
+                    newNode.start = nodeCapacity;
+                    node = newNode;
+                }
+                ptr = 0;
+            } else {
+                int elementsToMove;
+                if (policy == SplitPolicy.APPEND) {
+                    // move the elements after the insertion point
+                    elementsToMove = node.numElements - ptr;
+                } else {
+                    // move half of the elements
+                    elementsToMove = nodeCapacity / 2;
+                }
+                int startIndex = node.numElements - elementsToMove;
+                System.arraycopy(node.elements, startIndex, newNode.elements, 0, elementsToMove);
+                for (int i = startIndex; i < node.numElements; i++) {
+                    node.elements[i] = null;
+                }
+                node.numElements = startIndex;
+                newNode.numElements = elementsToMove;
+                if (nodeIndex != null) {
+                    nodeIndex.adjust(node, -elementsToMove);
+                }
+                // insert the new node into the list
+                linkAfter(node, newNode);
+
+                // check whether the element should be inserted into
+                // the original node or into the new node
+                if (ptr > node.numElements || elementsToMove == 0) {
+                    ptr -= node.numElements;
+                    node = newNode;
+                }
+            }
+        } else if (node.numElements > nodeCapacity / 2) {
+            // the list is used as a deque and the free space of the node is
+            // at the other end: start a new node rather than moving the
+            // elements
+            if (node == lastNode && ptr == node.numElements
+                    && node.start + node.numElements == nodeCapacity) {
+                Node newNode = newNode();
+                linkAfter(node, newNode);
+                node = newNode;
+                ptr = 0;
+            } else if (node == firstNode && ptr == 0 && node.start == 0) {
+                Node newNode = newNode();
+                newNode.start = nodeCapacity;
+                linkBefore(node, newNode);
+                node = newNode;
+            }
+        }
+        int start = node.start;
+        int n = node.numElements;
+        if (cursor && ptr > 0 && ptr < n) {
+            openGap(node, ptr);
+            insertIntoGap(node, ptr, element);
+            if (index >= 0) {
+                setFinger(node, index - insertedPtr);
+            }
+            return node;
+        }
+        if (n > 0 && ((ptr == 0 && start == 0) || (ptr == n && start + n == nodeCapacity))) {
+            // there is no room at the end at which the element is inserted,
+            // so leave the same room at both ends
+            moveElements(node, (nodeCapacity - n) / 2);
+            start = node.start;
+        }
+        if (start > 0 && (ptr < n - ptr || start + n == nodeCapacity)) {
+            // move the elements before the insertion point to the front
+            System.arraycopy(node.elements, start, node.elements, start - 1, ptr);
+            start--;
+            node.start = start;
+        } else {
+            // move the elements after the insertion point to the back
+            System.arraycopy(node.elements, start + ptr, node.elements, start + ptr + 1, n - ptr);
+        }
+        node.elements[start + ptr] = element;
+        node.numElements++;
+        if (nodeIndex != null) {
+            nodeIndex.adjust(node, 1);
+        }
+        size++;
+        modCount++;
+        insertedPtr = ptr;
+        if (index >= 0) {
+            setFinger(node, index - ptr);
+        }
+        return node;
+
+    }
+
+    /**
+     * Inserts an element into the gap of the specified node, after moving
+     * the gap to the insertion point.
+     *
+     * @param node the node with the gap
+     * @param ptr the position at which the element should be inserted
+     *            among the elements of the node
+     * @param element the element to be inserted
+     */
+    private void insertIntoGap(Node node, int ptr, E element) {
 
+        moveGap(node, ptr);
+        node.elements[node.start + ptr] = element;
+        node.numElements++;
+        node.gapPtr++;
+        node.gapSize--;
+        if (node.gapSize == 0) {
+            node.gapPtr = 0;
+            gapNode = null;
         }
+        if (nodeIndex != null) {
+            nodeIndex.adjust(node, 1);
+        }
+        size++;
+        modCount++;
+        insertedPtr = ptr;
 
-        @Override
-        public int nextIndex() {
+    }
 
-            return (index + 1);
+    /**
+     * Removes an element from the specified node. If the node is left with
+     * fewer elements than the {@link #getMergeThreshold() merge threshold},
+     * it is merged with a neighbour that has room for its elements.
+     *
+     * @param node the node from which an element should be removed
+     * @param ptr the index of the element to be removed among
+     * the elements of the node
+     */
+    private void removeFromNode(Node node, int ptr) {
+
+        removeFromNode(node, ptr, false);
+
+    }
 
+    /**
+     * Removes an element from the specified node, like
+     * {@link #removeFromNode(Node, int) removeFromNode}. If the element is
+     * removed by a list iterator, its slot is left as a gap between the
+     * elements, which following insertions and removals at the iterator
+     * position reuse or widen without moving any elements.
+     *
+     * @param node the node from which an element should be removed
+     * @param ptr the index of the element to be removed among
+     * the elements of the node
+     * @param cursor whether the element is removed by a list iterator
+     */
+    private void removeFromNode(Node node, int ptr, boolean cursor) {
+
+        unshare(node);
+        // the index of the first element of this node, if the finger is on it
+        int base = fingerIndex(node, 0);
+        int start = node.start;
+        int n = --node.numElements;
+        if (node.gapSize == 0 && cursor && ptr > 0 && ptr < n) {
+            // start an empty gap at the element
+            closeGap();
+            node.gapPtr = ptr;
+            gapNode = node;
+        }
+        if (node == gapNode) {
+            // widen the gap by the slot of the element
+            if (ptr < node.gapPtr) {
+                moveGap(node, ptr + 1);
+                node.elements[start + ptr] = null;
+                node.gapPtr = ptr;
+            } else {
+                moveGap(node, ptr);
+                node.elements[start + ptr + node.gapSize] = null;
+            }
+            node.gapSize++;
+            if (n == 0) {
+                closeGap();
+            }
+        } else if (ptr < n - ptr) {
+            // close the hole from the side with fewer elements
+            System.arraycopy(node.elements, start, node.elements, start + 1, ptr);
+            node.elements[start] = null;
+            node.start = start + 1;
+        } else {
+            System.arraycopy(node.elements, start + ptr + 1, node.elements, start + ptr, n - ptr);
+            node.elements[start + n] = null;
+            if (n == 0) {
+                node.start = 0;
+            }
+        }
+        if (nodeIndex != null) {
+            nodeIndex.adjust(node, -1);
+        }
+        // a node with a gap is not merged while it is being edited, since
+        // the next insertion could split it again
+        if (node.numElements < mergeThreshold && node != gapNode) {
+            if (node.next != null && node.next.numElements + node.numElements <= nodeCapacity) {
+                mergeWithNextNode(node);
+            } else if (node.previous != null && node.previous.numElements + node.numElements <= nodeCapacity) {
+                node = node.previous;
+                base -= node.numElements;
+                mergeWithNextNode(node);
+            }
+        }
+        size--;
+        modCount++;
+        if (base >= 0) {
+            setFinger(node, base);
         }
 
-        @Override
-        public int previousIndex() {
+    }
 
-            return (index - 1);
+    /**
+     * Sorts the list with a merge sort over its nodes. The nodes are detached
+     * into an array of runs; whatever happens, the runs are linked together
+     * again at the end.
+     */
+    private void sortNodes(Comparator<? super E> c, boolean parallel) {
 
+        closeGap();
+        if (size > 1) {
+            if (c == null) {
+                c = (Comparator<? super E>) Comparator.naturalOrder();
+            }
+            ArrayList<Node> nodes = new ArrayList<Node>();
+            for (Node node = firstNode; node != null; node = node.next) {
+                nodes.add(node);
+            }
+            Object[] runs = nodes.toArray();
+            for (Object run : runs) {
+                ((Node) run).next = null;
+            }
+            NodeSorter sorter = new NodeSorter(runs, c, 0, runs.length, parallel);
+            try {
+                if (parallel) {
+                    ForkJoinPool.commonPool().invoke(sorter);
+                } else {
+                    sorter.compute();
+                }
+            } finally {
+                // link the runs together again
+                Node last = null;
+                for (Object run : runs) {
+                    for (Node node = (Node) run; node != null; node = node.next) {
+                        node.previous = last;
+                        if (last == null) {
+                            firstNode = node;
+                        } else {
+                            last.next = node;
+                        }
+                        last = node;
+                    }
+                }
+                lastNode = last;
+                if (nodeIndex != null) {
+                    nodeIndex.rebuild();
+                }
+                // the elements have moved between the nodes, even if the
+                // comparator has failed
+                finger = null;
+            }
+            if (sorter.failure != null) {
+                if (sorter.failure instanceof Error) {
+                    throw (Error) sorter.failure;
+                }
+                throw (RuntimeException) sorter.failure;
+            }
         }
+        modCount++;
 
-        @Override
-        public void remove() {
+    }
 
-            checkForModification();
-            removeFromNode(currentNode, ptr);
+    /**
+     * Sorts the runs <tt>lo</tt> to <tt>hi - 1</tt> of an array of runs,
+     * each of which is a chain of nodes linked through their <tt>next</tt>
+     * field. The sorted elements end up in the run at <tt>lo</tt>, and the
+     * other runs are set to <tt>null</tt>. Runs that are processed in
+     * parallel are independent, and the first exception thrown by the
+     * comparator is recorded in <tt>failure</tt> instead of being thrown.
+     */
+    private class NodeSorter extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of runs below which the work is not split further.
+         */
+        private static final int PARALLEL_THRESHOLD = 8;
+
+        final Object[] runs;
+        final Comparator<? super E> comparator;
+        final int lo;
+        final int hi;
+        final boolean parallel;
+        final NodeSorter root;
+        volatile Throwable failure;
+
+        NodeSorter(Object[] runs, Comparator<? super E> comparator, int lo, int hi, boolean parallel) {
+
+            this(runs, comparator, lo, hi, parallel, null);
 
         }
 
-        @Override
-        public void set(E e) {
+        private NodeSorter(Object[] runs, Comparator<? super E> comparator, int lo, int hi, boolean parallel,
+                NodeSorter root) {
 
-            checkForModification();
-            currentNode.elements[ptr] = e;
+            this.runs = runs;
+            this.comparator = comparator;
+            this.lo = lo;
+            this.hi = hi;
+            this.parallel = parallel;
+            this.root = (root == null) ? this : root;
 
         }
 
         @Override
-        public void add(E e) {
+        protected void compute() {
 
-            checkForModification();
-            insertIntoNode(currentNode, ptr + 1, e);
+            if (root.failure != null) {
+                return;
+            }
+            try {
+                if (hi - lo == 1) {
+                    // sort a copy, since Arrays.sort may leave its input
+                    // scrambled if the comparator throws
+                    Node node = (Node) runs[lo];
+                    Object[] sorted = Arrays.copyOfRange(node.elements, node.start,
+                            node.start + node.numElements);
+                    Arrays.sort(sorted, (Comparator<Object>) comparator);
+                    unshare(node);
+                    System.arraycopy(sorted, 0, node.elements, node.start, sorted.length);
+                    return;
+                }
+                int mid = (lo + hi) >>> 1;
+                NodeSorter left = new NodeSorter(runs, comparator, lo, mid, parallel, root);
+                NodeSorter right = new NodeSorter(runs, comparator, mid, hi, parallel, root);
+                if (parallel && hi - lo > PARALLEL_THRESHOLD) {
+                    invokeAll(left, right);
+                } else {
+                    left.compute();
+                    right.compute();
+                }
+                if (root.failure == null) {
+                    mergeRuns(lo, mid);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+            } catch (Error e) {
+                fail(e);
+            }
 
         }
 
-        private void checkForModification() {
+        private void fail(Throwable t) {
 
-            if (modCount != expectedModCount) {
-                throw new ConcurrentModificationException();
+            synchronized (root) {
+                if (root.failure == null) {
+                    root.failure = t;
+                }
+            }
+
+        }
+
+        /**
+         * Merges the run at <tt>j</tt> into the run at <tt>i</tt>, filling
+         * the nodes of the result up to the node capacity. The nodes of the
+         * input runs are reused for the output as soon as they have been
+         * read. If the comparator throws an exception, the rest of the
+         * elements is appended without comparing them.
+         */
+        private void mergeRuns(int i, int j) {
+
+            Node a = (Node) runs[i];
+            Node b = (Node) runs[j];
+            int aPtr = 0;
+            int bPtr = 0;
+            Node spare = null;
+            Node head = null;
+            Node out = null;
+            int outPtr = nodeCapacity;
+            try {
+                while (a != null && b != null) {
+                    Object element;
+                    if (comparator.compare((E) b.elements[b.start + bPtr], (E) a.elements[a.start + aPtr]) < 0) {
+                        element = b.elements[b.start + bPtr++];
+                    } else {
+                        element = a.elements[a.start + aPtr++];
+                    }
+                    if (outPtr == nodeCapacity) {
+                        // continue in a node that has been read already
+                        Node node;
+                        if (spare != null) {
+                            node = spare;
+                            spare = spare.next;
+                            node.next = null;
+                            unshare(node);
+                            node.start = 0;
+                        } else {
+                            node = new Node();
+                        }
+                        if (out == null) {
+                            head = node;
+                        } else {
+                            out.numElements = nodeCapacity;
+                            out.next = node;
+                        }
+                        out = node;
+                        outPtr = 0;
+                    }
+                    out.elements[outPtr++] = element;
+                    if (aPtr == a.numElements) {
+                        Node next = a.next;
+                        a.next = spare;
+                        spare = a;
+                        a = next;
+                        aPtr = 0;
+                    }
+                    if (b != null && bPtr == b.numElements) {
+                        Node next = b.next;
+                        b.next = spare;
+                        spare = b;
+                        b = next;
+                        bPtr = 0;
+                    }
+                }
+            } finally {
+                // append what is left of both runs; after an exception
+                // neither of them may be finished
+                if (out != null) {
+                    for (int k = outPtr; k < nodeCapacity; k++) {
+                        out.elements[k] = null;
+                    }
+                    out.numElements = outPtr;
+                }
+                Node tail = out;
+                for (int k = 0; k < 2; k++) {
+                    Node rest = (k == 0) ? a : b;
+                    if (rest != null) {
+                        int restPtr = (k == 0) ? aPtr : bPtr;
+                        if (restPtr > 0) {
+                            // drop the elements that have been merged
+                            unshare(rest);
+                            for (int m = rest.start; m < rest.start + restPtr; m++) {
+                                rest.elements[m] = null;
+                            }
+                            rest.start += restPtr;
+                            rest.numElements -= restPtr;
+                        }
+                        if (tail == null) {
+                            head = rest;
+                        } else {
+                            tail.next = rest;
+                        }
+                        tail = rest;
+                        while (tail.next != null) {
+                            tail = tail.next;
+                        }
+                    }
+                }
+                runs[i] = head;
+                runs[j] = null;
             }
 
         }
@@ -846,84 +5206,231 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
     }
 
     /**
-     * Insert an element into the specified node. If the node is already full,
-     * a new node will be created and inserted into the list after
-     * the specified node.
+     * Copies elements from an array to the end of the specified node. If they
+     * do not fit, the node is filled up and the rest of the elements are
+     * stored in new, full nodes that are inserted into the list after
+     * the specified node. The size of the list is not updated.
      *
-     * @param node
-     * @param ptr the position at which the element should be inserted
-     *            into the <tt>node.elements<tt> array
-     * @param element the element to be inserted
+     * @param node the node to which the elements should be appended
+     * @param a the array containing the elements
+     * @param from the position of the first element in the array
+     * @param length the number of elements to be copied
+     * @return the node that received the last element
      */
-    private void insertIntoNode(Node node, int ptr, E element) {
+    private Node fillNodes(Node node, Object[] a, int from, int length) {
 
-        // if the node is full
-        if (node.numElements == nodeCapacity) {
-            // create a new node
-            Node newNode = new Node();
-            // move half of the elements to the new node
-            int elementsToMove = nodeCapacity / 2;
-            int startIndex = nodeCapacity - elementsToMove;
-            int i;
-            for (i = 0; i < elementsToMove; i++) {
-                newNode.elements[i] = node.elements[startIndex + i];
-                node.elements[startIndex + i] = null;
-            }
-            node.numElements -= elementsToMove;
-            newNode.numElements = elementsToMove;
-            // insert the new node into the list
-            newNode.next = node.next;
-            newNode.previous = node;
-            if (node.next != null) {
-                node.next.previous = newNode;
-            }
-            node.next = newNode;
+        unshare(node);
+        if (node.start > 0 && node.start + node.numElements + length > nodeCapacity) {
+            moveElements(node, 0);
+        }
+        int n = Math.min(nodeCapacity - node.start - node.numElements, length);
+        System.arraycopy(a, from, node.elements, node.start + node.numElements, n);
+        node.numElements += n;
+        if (nodeIndex != null) {
+            nodeIndex.adjust(node, n);
+        }
+        from += n;
+        length -= n;
+        while (length > 0) {
+            Node newNode = newNode();
+            n = Math.min(nodeCapacity, length);
+            System.arraycopy(a, from, newNode.elements, 0, n);
+            newNode.numElements = n;
+            linkAfter(node, newNode);
+            node = newNode;
+            from += n;
+            length -= n;
+        }
+        return node;
 
-            if (node == lastNode) {
-                lastNode = newNode;
-            }
+    }
 
-            // check whether the element should be inserted into
-            // the original node or into the new node
-            if (ptr > node.numElements) {
-                node = newNode;
-                ptr -= node.numElements;
-            }
+    /**
+     * Inserts a new node into the list after the specified node.
+     *
+     * @param node the node after which the new node should be inserted
+     * @param newNode the node to be inserted
+     */
+    private void linkAfter(Node node, Node newNode) {
+
+        newNode.next = node.next;
+        newNode.previous = node;
+        if (node.next != null) {
+            node.next.previous = newNode;
         }
-        for (int i = node.numElements; i > ptr; i--) {
-            node.elements[i] = node.elements[i - 1];
+        node.next = newNode;
+        if (node == lastNode) {
+            lastNode = newNode;
+        }
+        if (nodeIndex != null) {
+            nodeIndex.insertAfter(node, newNode);
         }
-        node.elements[ptr] = element;
-        node.numElements++;
-        size++;
-        modCount++;
 
     }
 
     /**
-     * Removes an element from the specified node.
+     * Inserts a new node into the list before the specified node.
      *
-     * @param node the node from which an element should be removed
-     * @param ptr the index of the element to be removed within
-     * the <tt>node.elements<tt> array
+     * @param node the node before which the new node should be inserted
+     * @param newNode the node to be inserted
      */
-    private void removeFromNode(Node node, int ptr) {
+    private void linkBefore(Node node, Node newNode) {
 
-        node.numElements--;
-        for (int i = ptr; i < node.numElements; i++) {
-            node.elements[i] = node.elements[i + 1];
+        newNode.previous = node.previous;
+        newNode.next = node;
+        if (node.previous != null) {
+            node.previous.next = newNode;
+        }
+        node.previous = newNode;
+        if (node == firstNode) {
+            firstNode = newNode;
+        }
+        if (nodeIndex != null) {
+            nodeIndex.insertBefore(node, newNode);
+        }
+
+    }
+
+    /**
+     * Completes the removal of an element at either end of the specified
+     * node by {@link #pollFirst() pollFirst} or {@link #pollLast() pollLast}.
+     * The node is unlinked if it is empty, and not the only node of the list.
+     *
+     * @param node the node from which an element has been removed
+     */
+    private void removedAtEnd(Node node) {
+
+        if (nodeIndex != null) {
+            nodeIndex.adjust(node, -1);
         }
-        node.elements[node.numElements] = null;
-        if (node.next != null && node.next.numElements + node.numElements <= nodeCapacity) {
-            mergeWithNextNode(node);
-        } else if (node.previous != null && node.previous.numElements + node.numElements <= nodeCapacity) {
-            mergeWithNextNode(node.previous);
+        if (node.numElements == 0 && firstNode != lastNode) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+            } else {
+                firstNode = node.next;
+            }
+            if (node.next != null) {
+                node.next.previous = node.previous;
+            } else {
+                lastNode = node.previous;
+            }
+            if (nodeIndex != null) {
+                nodeIndex.remove(node);
+            }
+            recycleNode(node);
         }
         size--;
         modCount++;
 
     }
 
+    /**
+     * Removes a range of consecutive elements that starts in the specified
+     * node. The elements are removed from the first and the last node of the
+     * range with array copies, and the nodes in between are unlinked at
+     * once, so the cost depends on the number of nodes rather than the
+     * number of elements. The remaining parts of the boundary nodes are
+     * merged if they are small enough.
+     *
+     * @param node the node that contains the first element to be removed
+     * @param ptr the position of that element among the elements of the node
+     * @param count the number of elements to be removed, at least 1
+     */
+    private void removeElements(Node node, int ptr, int count) {
+
+        closeGap();
+        unshare(node);
+        // remove the elements in the first node and close the hole from the
+        // side with fewer elements
+        int start = node.start;
+        int n = node.numElements;
+        int removed = Math.min(n - ptr, count);
+        Arrays.fill(node.elements, start + ptr, start + ptr + removed, null);
+        if (ptr < n - ptr - removed) {
+            shiftElements(node.elements, start, start + removed, ptr);
+            node.start = start + removed;
+        } else {
+            shiftElements(node.elements, start + ptr + removed, start + ptr, n - ptr - removed);
+        }
+        node.numElements = n - removed;
+        // skip the nodes that are removed completely
+        int remaining = count - removed;
+        Node next = node.next;
+        while (remaining > 0 && next.numElements <= remaining) {
+            remaining -= next.numElements;
+            next = next.next;
+        }
+        if (remaining > 0) {
+            // remove the elements at the front of the last node
+            unshare(next);
+            Arrays.fill(next.elements, next.start, next.start + remaining, null);
+            next.start += remaining;
+            next.numElements -= remaining;
+        }
+        boolean unlinked = false;
+        if (node.next != next) {
+            // unlink the nodes in between, and put some of them into the pool
+            Node detached = node.next;
+            if (next == null) {
+                lastNode.next = null;
+                lastNode = node;
+            } else {
+                next.previous.next = null;
+                next.previous = node;
+            }
+            node.next = next;
+            while (detached != null && nodePoolSize < nodePoolCapacity) {
+                Node following = detached.next;
+                recycleNode(detached);
+                detached = following;
+            }
+            unlinked = true;
+        }
+        if (node.numElements == 0) {
+            node.start = 0;
+            if (firstNode != lastNode) {
+                // unlink the first node as well
+                Node previous = node.previous;
+                if (previous != null) {
+                    previous.next = next;
+                } else {
+                    firstNode = next;
+                }
+                if (next != null) {
+                    next.previous = previous;
+                } else {
+                    lastNode = previous;
+                }
+                recycleNode(node);
+                node = previous;
+                unlinked = true;
+            }
+        }
+        if (nodeIndex != null) {
+            if (unlinked) {
+                nodeIndex.rebuild();
+            } else {
+                nodeIndex.adjust(node, -removed);
+                if (remaining > 0) {
+                    nodeIndex.adjust(next, -remaining);
+                }
+            }
+        }
+        // merge the boundary nodes if one of them is nearly empty now
+        if (node != null && node.next != null) {
+            next = node.next;
+            if ((node.numElements < mergeThreshold || next.numElements < mergeThreshold)
+                    && node.numElements + next.numElements <= nodeCapacity) {
+                mergeWithNextNode(node);
+            }
+        }
+        size -= count;
+        modCount++;
+        // do not keep the unlinked nodes reachable
+        finger = null;
+
+    }
+
     /**
      * This method does merge the specified node with the next node.
      *
@@ -932,10 +5439,23 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
     private void mergeWithNextNode(Node node) {
 
         Node next = node.next;
-        for (int i = 0; i < next.numElements; i++) {
-            node.elements[node.numElements + i] = next.elements[i];
-            next.elements[i] = null;
+        if (gapNode == node || gapNode == next) {
+            closeGap();
+        }
+        if (statistics != null) {
+            statistics.merges++;
+        }
+        if (nodeIndex != null) {
+            int moved = next.numElements;
+            nodeIndex.remove(next);
+            nodeIndex.adjust(node, moved);
+        }
+        unshare(node);
+        if (node.start + node.numElements + next.numElements > nodeCapacity) {
+            moveElements(node, 0);
         }
+        System.arraycopy(next.elements, next.start, node.elements, node.start + node.numElements,
+                next.numElements);
         node.numElements += next.numElements;
         if (next.next != null) {
             next.next.previous = node;
@@ -944,6 +5464,231 @@ public class UnrolledLinkedList<E> extends AbstractList<E> implements List<E>, S
         if (next == lastNode) {
             lastNode = node;
         }
+        recycleNode(next);
+
+    }
+
+    /**
+     * Makes sure that the element array of the specified node is not shared
+     * with a {@link #snapshot() snapshot}, by copying it if it is. This must
+     * be called before the array of a node is modified.
+     *
+     * @param node the node that is about to be modified
+     */
+    private void unshare(Node node) {
+
+        if (node.shared) {
+            node.elements = node.elements.clone();
+            node.shared = false;
+        }
+
+    }
+
+    /**
+     * Moves the elements of the specified node within its array, so that
+     * the first element is stored at the given position. The node must not
+     * be shared and must not have a gap.
+     *
+     * @param node the node whose elements should be moved
+     * @param newStart the new position of the first element
+     */
+    private void moveElements(Node node, int newStart) {
+
+        shiftElements(node.elements, node.start, newStart, node.numElements);
+        node.start = newStart;
+
+    }
+
+    /**
+     * Copies a range of an element array to another position in the same
+     * array and clears the slots that are no longer used.
+     *
+     * @param elements the element array
+     * @param from the position of the first element to be moved
+     * @param to the new position of the first element
+     * @param length the number of elements to be moved
+     */
+    private static void shiftElements(Object[] elements, int from, int to, int length) {
+
+        if (from != to) {
+            System.arraycopy(elements, from, elements, to, length);
+            if (to < from) {
+                for (int i = Math.max(from, to + length); i < from + length; i++) {
+                    elements[i] = null;
+                }
+            } else {
+                for (int i = from; i < Math.min(from + length, to); i++) {
+                    elements[i] = null;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Returns the position in the array of the specified node at which one
+     * of its elements is stored, taking the gap into account.
+     *
+     * @param node the node
+     * @param ptr the index of the element among the elements of the node
+     * @return the index of the element in <tt>node.elements</tt>
+     */
+    private static int slot(UnrolledLinkedList<?>.Node node, int ptr) {
+
+        return node.start + ptr + ((ptr < node.gapPtr) ? 0 : node.gapSize);
+
+    }
+
+    /**
+     * Copies elements of the specified node into an array, reading around
+     * the gap of the node if it has one.
+     *
+     * @param node the node
+     * @param ptr the position of the first element to be copied among the
+     *            elements of the node
+     * @param a the array into which the elements are copied
+     * @param p the position in the array of the first element
+     * @param n the number of elements to be copied
+     */
+    private static void copyElements(UnrolledLinkedList<?>.Node node, int ptr, Object[] a, int p, int n) {
+
+        int start = node.start;
+        int before = Math.max(0, Math.min(node.gapPtr - ptr, n));
+        System.arraycopy(node.elements, start + ptr, a, p, before);
+        System.arraycopy(node.elements, start + node.gapSize + ptr + before, a, p + before, n - before);
+
+    }
+
+    /**
+     * Creates a gap at the specified position of a node that has free
+     * slots, taking up the free slots at one end of its array. The gap of
+     * any other node is closed first.
+     *
+     * @param node the node, which must not be shared
+     * @param ptr the position of the gap among the elements of the node
+     */
+    private void openGap(Node node, int ptr) {
+
+        closeGap();
+        int n = node.numElements;
+        int back = nodeCapacity - node.start - n;
+        if (node.start > 0 && (back == 0 || ptr < n - ptr)) {
+            // move the elements before the gap to the front of the array
+            node.gapSize = node.start;
+            shiftElements(node.elements, node.start, 0, ptr);
+            node.start = 0;
+        } else {
+            // move the elements after the gap to the back of the array
+            node.gapSize = back;
+            shiftElements(node.elements, node.start + ptr, nodeCapacity - (n - ptr), n - ptr);
+        }
+        node.gapPtr = ptr;
+        gapNode = node;
+
+    }
+
+    /**
+     * Moves the gap of the specified node to another position, by moving
+     * the elements between the old and the new position across it.
+     *
+     * @param node the node with the gap
+     * @param ptr the new position of the gap among the elements of the node
+     */
+    private void moveGap(Node node, int ptr) {
+
+        int start = node.start;
+        int gapPtr = node.gapPtr;
+        int gapSize = node.gapSize;
+        if (ptr < gapPtr) {
+            shiftElements(node.elements, start + ptr, start + ptr + gapSize, gapPtr - ptr);
+        } else if (ptr > gapPtr) {
+            shiftElements(node.elements, start + gapPtr + gapSize, start + gapPtr, ptr - gapPtr);
+        }
+        node.gapPtr = ptr;
+
+    }
+
+    /**
+     * Closes the gap of the {@link #gapNode gapNode}, if there is one, by
+     * moving the elements on the shorter side of it. This must be called
+     * before a modification accesses the elements of the nodes as one range
+     * per node. Operations that only read the list must not call it, since
+     * several threads may read the list at the same time; they read the
+     * elements before and after the gap instead.
+     */
+    private void closeGap() {
+
+        Node node = gapNode;
+        if (node != null) {
+            int start = node.start;
+            int n = node.numElements;
+            int gapPtr = node.gapPtr;
+            int gapSize = node.gapSize;
+            if (n == 0) {
+                node.start = 0;
+            } else if (gapPtr < n - gapPtr) {
+                shiftElements(node.elements, start, start + gapSize, gapPtr);
+                node.start = start + gapSize;
+            } else {
+                shiftElements(node.elements, start + gapPtr + gapSize, start + gapPtr, n - gapPtr);
+            }
+            node.gapPtr = 0;
+            node.gapSize = 0;
+            gapNode = null;
+        }
+
+    }
+
+    /**
+     * Returns an empty node, taken from the node pool if possible.
+     *
+     * @return an empty node that is not linked into the list
+     */
+    private Node newNode() {
+
+        Node node = nodePool;
+        if (node != null) {
+            nodePool = node.next;
+            node.next = null;
+            nodePoolSize--;
+            nodePoolHits++;
+            return node;
+        }
+        if (nodePoolCapacity > 0) {
+            nodePoolMisses++;
+        }
+        return new Node();
+
+    }
+
+    /**
+     * Puts a node that has been unlinked from the list into the node pool,
+     * unless the pool is full. The elements stored in the node are cleared.
+     *
+     * @param node the node to be recycled
+     * @return <tt>true</tt> if the node has been put into the pool
+     */
+    private boolean recycleNode(Node node) {
+
+        if (nodePoolSize >= nodePoolCapacity) {
+            return false;
+        }
+        if (node.shared) {
+            node.elements = new Object[nodeCapacity];
+            node.shared = false;
+        } else {
+            for (int i = node.start; i < node.start + node.numElements; i++) {
+                node.elements[i] = null;
+            }
+        }
+        node.start = 0;
+        node.numElements = 0;
+        node.previous = null;
+        node.indexEntry = null;
+        node.next = nodePool;
+        nodePool = node;
+        nodePoolSize++;
+        return true;
 
     }
 
@@ -0,0 +1,452 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * An unbounded, lock-free FIFO queue for exactly one producer thread and one
+ * consumer thread. Like {@link UnrolledLinkedList} it stores its elements in
+ * a chain of nodes of up to <tt>nodeCapacity</tt> elements, but the elements
+ * are never moved: the producer fills each node from the front and the
+ * consumer empties it from the front, each with its own position, and a node
+ * is dropped once the consumer has read all of it. Compared to
+ * <tt>add</tt> and <tt>remove(0)</tt> on an <tt>UnrolledLinkedList</tt> this
+ * avoids shifting the first node on every removal, and it needs no locks.
+ *
+ * <p>The producer publishes the elements of a node by storing the number of
+ * elements written with release semantics (<tt>lazySet</tt>), and links a new
+ * node only after its first element is in place; the consumer reads these
+ * fields with acquire semantics. {@link #offer(Object) offer} and
+ * {@link #poll() poll} are wait-free, apart from the allocation of a new node
+ * by <tt>offer</tt> once per <tt>nodeCapacity</tt> elements.
+ * {@link #addAll(Collection) addAll} and {@link #drainTo(Collection, int)
+ * drainTo} move many elements with one publication per node.
+ *
+ * <p><strong>The queue is only thread-safe if it is used by one producer and
+ * one consumer.</strong> <tt>offer</tt>, <tt>add</tt> and <tt>addAll</tt> may
+ * only be called by the producer thread; <tt>poll</tt>, <tt>peek</tt>,
+ * <tt>remove</tt>, <tt>element</tt>, <tt>drainTo</tt>, <tt>clear</tt> and the
+ * methods that iterate over the queue (<tt>iterator</tt>, <tt>contains</tt>,
+ * <tt>toArray</tt>, <tt>toString</tt>, ...) only by the consumer thread.
+ * <tt>size</tt> and <tt>isEmpty</tt> may be called by any thread, but their
+ * result is only a snapshot. The iterator does not support <tt>remove</tt>.
+ *
+ * <p>This queue does not permit <tt>null</tt> elements.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see UnrolledLinkedList
+ */
+public class UnrolledSpscQueue<E> extends AbstractQueue<E> {
+
+    private static final AtomicIntegerFieldUpdater<Node> WRITTEN =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "written");
+
+    private static final AtomicLongFieldUpdater<UnrolledSpscQueue<?>> OFFERED = counterUpdater("offered");
+
+    private static final AtomicLongFieldUpdater<UnrolledSpscQueue<?>> POLLED = counterUpdater("polled");
+
+    /**
+     * The maximum number of elements that can be stored in a single node.
+     */
+    private final int nodeCapacity;
+
+    /**
+     * The node the producer writes to. Only accessed by the producer.
+     */
+    private Node tailNode;
+
+    /**
+     * The position in {@link #tailNode tailNode} at which the next element is
+     * written. Only accessed by the producer.
+     */
+    private int tailPtr;
+
+    /**
+     * The node the consumer reads from. Only accessed by the consumer.
+     */
+    private Node headNode;
+
+    /**
+     * The position in {@link #headNode headNode} of the next element to be
+     * read. Only accessed by the consumer.
+     */
+    private int headPtr;
+
+    /**
+     * The number of elements that have been added to the queue. Only written
+     * by the producer.
+     */
+    private volatile long offered;
+
+    /**
+     * The number of elements that have been removed from the queue. Only
+     * written by the consumer.
+     */
+    private volatile long polled;
+
+    /**
+     * Constructs an empty queue with the specified
+     * {@link UnrolledSpscQueue#nodeCapacity nodeCapacity}. For performance
+     * reasons <tt>nodeCapacity</tt> must be greater than or equal to 8.
+     *
+     * @param nodeCapacity The maximum number of elements
+     *        that can be stored in a single node.
+     * @throws IllegalArgumentException if <tt>nodeCapacity</tt> is less than 8
+     */
+    public UnrolledSpscQueue(int nodeCapacity) throws IllegalArgumentException {
+
+        if (nodeCapacity < 8) {
+            throw new IllegalArgumentException("nodeCapacity < 8");
+        }
+        this.nodeCapacity = nodeCapacity;
+        tailNode = new Node(nodeCapacity);
+        headNode = tailNode;
+
+    }
+
+    /**
+     * Constructs an empty queue with
+     * {@link UnrolledSpscQueue#nodeCapacity nodeCapacity} of 64.
+     */
+    public UnrolledSpscQueue() {
+
+        this(64);
+
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue. May only be
+     * called by the producer thread.
+     *
+     * @param e the element to add
+     * @return <tt>true</tt> (the queue is unbounded)
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        Node node = tailNode;
+        // the element is counted before it is published, so that the
+        // consumer never removes more elements than have been counted
+        OFFERED.lazySet(this, offered + 1);
+        if (tailPtr < nodeCapacity) {
+            node.elements[tailPtr++] = e;
+            WRITTEN.lazySet(node, tailPtr);
+        } else {
+            Node newNode = new Node(nodeCapacity);
+            newNode.elements[0] = e;
+            WRITTEN.lazySet(newNode, 1);
+            // the volatile write publishes the new node with its element
+            node.next = newNode;
+            tailNode = newNode;
+            tailPtr = 1;
+        }
+        return true;
+
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection at the tail of
+     * this queue. The elements of each node are published at once. May only
+     * be called by the producer thread.
+     *
+     * @param c collection containing elements to be added to this queue
+     * @return <tt>true</tt> if this queue changed as a result of the call
+     * @throws NullPointerException if the specified collection or any of its
+     *         elements is null; the elements before the null element have
+     *         been added in the latter case
+     * @throws IllegalArgumentException if the collection is this queue
+     */
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        Node node = tailNode;
+        int ptr = tailPtr;
+        int added = 0;
+        // the number of elements that have not been counted in offered yet;
+        // each node is counted before it is published
+        int pending = 0;
+        try {
+            for (E e : c) {
+                if (e == null) {
+                    throw new NullPointerException();
+                }
+                if (ptr == nodeCapacity) {
+                    OFFERED.lazySet(this, offered + pending + 1);
+                    pending = 0;
+                    WRITTEN.lazySet(node, ptr);
+                    Node newNode = new Node(nodeCapacity);
+                    newNode.elements[0] = e;
+                    WRITTEN.lazySet(newNode, 1);
+                    node.next = newNode;
+                    node = newNode;
+                    ptr = 1;
+                } else {
+                    node.elements[ptr++] = e;
+                    pending++;
+                }
+                added++;
+            }
+        } finally {
+            OFFERED.lazySet(this, offered + pending);
+            WRITTEN.lazySet(node, ptr);
+            tailNode = node;
+            tailPtr = ptr;
+        }
+        return added > 0;
+
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, or returns <tt>null</tt>
+     * if this queue is empty. May only be called by the consumer thread.
+     *
+     * @return the head of this queue, or <tt>null</tt> if this queue is empty
+     */
+    public E poll() {
+
+        Node node = readableNode();
+        if (node == null) {
+            return null;
+        }
+        E e = (E) node.elements[headPtr];
+        node.elements[headPtr++] = null;
+        POLLED.lazySet(this, polled + 1);
+        return e;
+
+    }
+
+    /**
+     * Retrieves, but does not remove, the head of this queue, or returns
+     * <tt>null</tt> if this queue is empty. May only be called by the
+     * consumer thread.
+     *
+     * @return the head of this queue, or <tt>null</tt> if this queue is empty
+     */
+    public E peek() {
+
+        Node node = readableNode();
+        return (node == null) ? null : (E) node.elements[headPtr];
+
+    }
+
+    /**
+     * Removes all available elements from this queue and adds them to the
+     * given collection. May only be called by the consumer thread.
+     *
+     * @param c the collection to transfer elements into
+     * @return the number of elements transferred
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the collection is this queue
+     */
+    public int drainTo(Collection<? super E> c) {
+
+        return drainTo(c, Integer.MAX_VALUE);
+
+    }
+
+    /**
+     * Removes at most the given number of available elements from this queue
+     * and adds them to the given collection. The published elements of a node
+     * are read at once. May only be called by the consumer thread.
+     *
+     * <p>If adding an element to the collection fails with an exception, the
+     * element is lost, but the elements after it remain in the queue.
+     *
+     * @param c the collection to transfer elements into
+     * @param maxElements the maximum number of elements to transfer
+     * @return the number of elements transferred
+     * @throws NullPointerException if the specified collection is null
+     * @throws IllegalArgumentException if the collection is this queue
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int drained = 0;
+        try {
+            Node node;
+            while (drained < maxElements && (node = readableNode()) != null) {
+                int end = (int) Math.min(node.written, (long) headPtr + maxElements - drained);
+                while (headPtr < end) {
+                    Object e = node.elements[headPtr];
+                    node.elements[headPtr++] = null;
+                    drained++;
+                    c.add((E) e);
+                }
+            }
+        } finally {
+            POLLED.lazySet(this, polled + drained);
+        }
+        return drained;
+
+    }
+
+    /**
+     * Returns the number of elements in this queue. The result is only a
+     * snapshot if the queue is used concurrently.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+
+        // read the consumer's count first: the producer counts every element
+        // before publishing it, so the result is never negative
+        long p = polled;
+        long size = offered - p;
+        return (size > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) size;
+
+    }
+
+    /**
+     * Returns <tt>true</tt> if this queue contains no elements.
+     *
+     * @return <tt>true</tt> if this queue contains no elements
+     */
+    @Override
+    public boolean isEmpty() {
+
+        return size() == 0;
+
+    }
+
+    /**
+     * Returns an iterator over the elements in this queue, from head to tail.
+     * The iterator returns the elements that are published when it reaches
+     * them. It may only be used by the consumer thread, and does not support
+     * <tt>remove</tt>.
+     *
+     * @return an iterator over the elements in this queue
+     */
+    public Iterator<E> iterator() {
+
+        return new SpscIterator();
+
+    }
+
+    /**
+     * Creates an updater for one of the element counters. The class literal
+     * can only denote the raw type, so the updater is cast to the wildcard
+     * type, which is safe since the field does not depend on the type of
+     * the elements.
+     *
+     * @param name the name of the counter field
+     * @return the updater of the field
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static AtomicLongFieldUpdater<UnrolledSpscQueue<?>> counterUpdater(String name) {
+
+        return (AtomicLongFieldUpdater) AtomicLongFieldUpdater.newUpdater(UnrolledSpscQueue.class, name);
+
+    }
+
+    /**
+     * Returns the node from which the consumer can read the next element,
+     * moving on to the next node if the current one has been read
+     * completely.
+     *
+     * @return the node holding the next element at <tt>headPtr</tt>, or
+     *         <tt>null</tt> if no element is available
+     */
+    private Node readableNode() {
+
+        Node node = headNode;
+        if (headPtr == node.written) {
+            Node next;
+            if (headPtr < nodeCapacity || (next = node.next) == null) {
+                return null;
+            }
+            // the producer links a node only after writing its first element
+            headNode = next;
+            headPtr = 0;
+            return next;
+        }
+        return node;
+
+    }
+
+    /**
+     * A node of the queue. Its elements are written once by the producer, in
+     * order, and cleared by the consumer as it reads them.
+     */
+    private static final class Node {
+
+        /**
+         * The array in which the elements are stored.
+         */
+        final Object[] elements;
+
+        /**
+         * The number of elements that have been written to this node.
+         */
+        volatile int written;
+
+        /**
+         * The next node, linked when this one is full.
+         */
+        volatile Node next;
+
+        Node(int capacity) {
+
+            elements = new Object[capacity];
+
+        }
+
+    }
+
+    /**
+     * An iterator over the published elements of the queue.
+     */
+    private class SpscIterator implements Iterator<E> {
+
+        private Node node = headNode;
+
+        private int ptr = headPtr;
+
+        public boolean hasNext() {
+
+            if (ptr == node.written) {
+                Node next;
+                if (ptr < nodeCapacity || (next = node.next) == null) {
+                    return false;
+                }
+                node = next;
+                ptr = 0;
+            }
+            return true;
+
+        }
+
+        public E next() {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (E) node.elements[ptr++];
+
+        }
+
+    }
+
+}
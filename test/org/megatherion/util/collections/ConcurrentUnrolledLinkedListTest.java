@@ -0,0 +1,206 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link ConcurrentUnrolledLinkedList} on its own and while it is
+ * modified and read by several threads.
+ */
+public class ConcurrentUnrolledLinkedListTest {
+
+    private static final int THREADS = 4;
+
+    @Test
+    public void sameAsArrayList() {
+
+        Random random = new Random(14);
+        ConcurrentUnrolledLinkedList<Integer> list = new ConcurrentUnrolledLinkedList<Integer>(8);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int step = 0; step < 5000; step++) {
+            int index = random.nextInt(expected.size() + 1);
+            Integer element = random.nextInt(50);
+            switch (random.nextInt(6)) {
+                case 0:
+                    list.add(element);
+                    expected.add(element);
+                    break;
+                case 1:
+                case 2:
+                    list.add(index, element);
+                    expected.add(index, element);
+                    break;
+                case 3:
+                    if (index < expected.size()) {
+                        assertEquals(expected.remove(index), list.remove(index));
+                    }
+                    break;
+                case 4:
+                    assertEquals(expected.remove(element), list.remove(element));
+                    break;
+                default:
+                    if (index < expected.size()) {
+                        assertEquals(expected.set(index, element), list.set(index, element));
+                    }
+                    break;
+            }
+            assertEquals(expected.size(), list.size());
+        }
+        assertEquals(expected, list);
+        assertEquals(expected.indexOf(7), list.indexOf(7));
+        assertEquals(expected.lastIndexOf(7), list.lastIndexOf(7));
+
+    }
+
+    @Test
+    public void concurrentAppendsAndInserts() throws Throwable {
+
+        final ConcurrentUnrolledLinkedList<Integer> list = new ConcurrentUnrolledLinkedList<Integer>(8);
+        final int perThread = 20000;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        Random random = new Random(thread);
+                        for (int i = 0; i < perThread; i++) {
+                            Integer element = thread * perThread + i;
+                            if (random.nextBoolean()) {
+                                list.add(element);
+                            } else {
+                                list.add(random.nextInt(list.size() + 1), element);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+
+                }
+
+            };
+        }
+        run(threads, failure);
+        assertEquals(THREADS * perThread, list.size());
+        List<Integer> elements = new ArrayList<Integer>(list);
+        Collections.sort(elements);
+        for (int i = 0; i < elements.size(); i++) {
+            assertEquals(i, (int) elements.get(i));
+        }
+
+    }
+
+    @Test
+    public void weaklyConsistentIteration() throws Throwable {
+
+        final ConcurrentUnrolledLinkedList<Integer> list = new ConcurrentUnrolledLinkedList<Integer>(8);
+        final int stable = 2000;
+        // negative elements are never removed, so every iteration must
+        // return each of them exactly once
+        for (int i = 0; i < stable; i++) {
+            list.add(-1 - i);
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS + 2];
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        Random random = new Random(thread);
+                        for (int i = 0; i < 10000; i++) {
+                            try {
+                                if (random.nextBoolean()) {
+                                    list.add(random.nextInt(list.size() + 1), i);
+                                } else {
+                                    Integer element = list.get(random.nextInt(list.size()));
+                                    if (element >= 0) {
+                                        list.remove(element);
+                                    }
+                                }
+                            } catch (IndexOutOfBoundsException e) {
+                                // another thread has shrunk the list in between
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+
+                }
+
+            };
+        }
+        for (int t = THREADS; t < threads.length; t++) {
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            int[] seen = new int[stable];
+                            for (Integer element : list) {
+                                if (element < 0) {
+                                    seen[-1 - element]++;
+                                }
+                            }
+                            for (int j = 0; j < stable; j++) {
+                                assertEquals(1, seen[j]);
+                            }
+                            list.indexOf(-1 - i);
+                            list.contains(i);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+
+                }
+
+            };
+        }
+        run(threads, failure);
+        int stableCount = 0;
+        for (Integer element : list) {
+            if (element < 0) {
+                stableCount++;
+            }
+        }
+        assertEquals(stable, stableCount);
+        assertEquals(list.size(), new ArrayList<Integer>(list).size());
+
+    }
+
+    static void run(Thread[] threads, AtomicReference<Throwable> failure) throws Throwable {
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link OptimisticUnrolledLinkedList} on its own and while it is
+ * read by several threads and modified by another.
+ */
+public class OptimisticUnrolledLinkedListTest {
+
+    private static final int READERS = 4;
+
+    /**
+     * The number of elements at the front of the list that the writer never
+     * touches.
+     */
+    private static final int STABLE = 500;
+
+    @Test
+    public void sameAsArrayList() {
+
+        Random random = new Random(15);
+        OptimisticUnrolledLinkedList<Integer> list = new OptimisticUnrolledLinkedList<Integer>(8);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int step = 0; step < 5000; step++) {
+            int index = random.nextInt(expected.size() + 1);
+            Integer element = random.nextInt(50);
+            switch (random.nextInt(6)) {
+                case 0:
+                    list.add(element);
+                    expected.add(element);
+                    break;
+                case 1:
+                case 2:
+                    list.add(index, element);
+                    expected.add(index, element);
+                    break;
+                case 3:
+                    if (index < expected.size()) {
+                        assertEquals(expected.remove(index), list.remove(index));
+                    }
+                    break;
+                case 4:
+                    assertEquals(expected.indexOf(element), list.indexOf(element));
+                    assertEquals(expected.lastIndexOf(element), list.lastIndexOf(element));
+                    assertEquals(expected.contains(element), list.contains(element));
+                    break;
+                default:
+                    if (index < expected.size()) {
+                        assertEquals(expected.set(index, element), list.set(index, element));
+                        assertEquals(expected.get(index), list.get(index));
+                    }
+                    break;
+            }
+            assertEquals(expected.size(), list.size());
+        }
+        assertEquals(expected, list);
+        assertArrayEquals(expected.toArray(), list.toArray());
+        list.sort(null);
+        Collections.sort(expected);
+        assertEquals(expected, list);
+
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfRange() {
+
+        OptimisticUnrolledLinkedList<Integer> list = new OptimisticUnrolledLinkedList<Integer>();
+        list.addAll(Arrays.asList(1, 2, 3));
+        list.get(3);
+
+    }
+
+    @Test
+    public void readsDuringWrites() throws Throwable {
+
+        final OptimisticUnrolledLinkedList<Integer> list = new OptimisticUnrolledLinkedList<Integer>(8);
+        for (int i = 0; i < STABLE; i++) {
+            list.add(-1 - i);
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[READERS + 1];
+        threads[0] = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+                    Random random = new Random(0);
+                    for (int i = 0; i < 100000; i++) {
+                        int variable = list.size() - STABLE;
+                        switch (random.nextInt(4)) {
+                            case 0:
+                            case 1:
+                                list.add(STABLE + random.nextInt(variable + 1), i);
+                                break;
+                            case 2:
+                                if (variable > 0) {
+                                    list.remove(STABLE + random.nextInt(variable));
+                                }
+                                break;
+                            default:
+                                if (variable > 0) {
+                                    list.set(STABLE + random.nextInt(variable), i);
+                                }
+                                break;
+                        }
+                        if (list.size() > 4 * STABLE) {
+                            list.removeIf(e -> e >= 0);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+
+            }
+
+        };
+        for (int t = 1; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        Random random = new Random(thread);
+                        for (int i = 0; i < 20000; i++) {
+                            int index = random.nextInt(STABLE);
+                            assertEquals(-1 - index, (int) list.get(index));
+                            assertEquals(index, list.indexOf(-1 - index));
+                            if (i % 100 == 0) {
+                                int expected = -1;
+                                for (Integer element : list) {
+                                    if (element < 0) {
+                                        assertEquals(expected--, (int) element);
+                                    }
+                                }
+                                assertEquals(-1 - STABLE, expected);
+                                Object[] elements = list.toArray();
+                                for (int j = 0; j < STABLE; j++) {
+                                    assertEquals(-1 - j, elements[j]);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+
+                }
+
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        for (int i = 0; i < STABLE; i++) {
+            assertEquals(-1 - i, (int) list.get(i));
+        }
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that snapshots of an {@link UnrolledLinkedList} and the lists
+ * derived from a {@link PersistentUnrolledList} never change.
+ */
+public class PersistentUnrolledListTest {
+
+    @Test
+    public void snapshotUnchangedByWrites() {
+
+        for (boolean indexed : new boolean[] {false, true}) {
+            UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8, indexed);
+            for (int i = 0; i < 200; i++) {
+                list.add(i);
+            }
+            List<Integer> expected = new ArrayList<Integer>(list);
+            PersistentUnrolledList<Integer> snapshot = list.snapshot();
+            list.set(5, -5);
+            list.add(17, -17);
+            list.remove(100);
+            list.add(-1);
+            ListIterator<Integer> it = list.listIterator(50);
+            it.next();
+            it.set(-50);
+            it.add(-51);
+            it.add(-52);
+            it.next();
+            it.remove();
+            list.replaceAll(e -> e + 1);
+            list.removeIf(e -> e % 7 == 0);
+            list.subList(10, 30).clear();
+            list.reversed().set(0, -1000);
+            list.sort(Collections.reverseOrder());
+            assertEquals(expected, snapshot);
+            list.clear();
+            assertEquals(expected, snapshot);
+            assertEquals(expected.size(), snapshot.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), snapshot.get(i));
+            }
+        }
+
+    }
+
+    @Test
+    public void snapshotsOfEveryVersion() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8);
+        List<Integer> expected = new ArrayList<Integer>();
+        List<PersistentUnrolledList<Integer>> snapshots = new ArrayList<PersistentUnrolledList<Integer>>();
+        List<List<Integer>> versions = new ArrayList<List<Integer>>();
+        Random random = new Random(16);
+        for (int step = 0; step < 500; step++) {
+            int index = random.nextInt(expected.size() + 1);
+            if (random.nextInt(3) == 0 && index < expected.size()) {
+                list.remove(index);
+                expected.remove(index);
+            } else if (random.nextBoolean() && index < expected.size()) {
+                list.set(index, step);
+                expected.set(index, step);
+            } else {
+                list.add(index, step);
+                expected.add(index, step);
+            }
+            if (step % 25 == 0) {
+                snapshots.add(list.snapshot());
+                versions.add(new ArrayList<Integer>(expected));
+            }
+        }
+        assertEquals(expected, list);
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals(versions.get(i), snapshots.get(i));
+        }
+
+    }
+
+    @Test
+    public void iterateSnapshotWhileListChanges() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8);
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+        PersistentUnrolledList<Integer> snapshot = list.snapshot();
+        int expected = 0;
+        for (Iterator<Integer> it = snapshot.iterator(); it.hasNext(); expected++) {
+            assertEquals(expected, (int) it.next());
+            list.add(0, -expected);
+            list.remove(list.size() - 1);
+        }
+        assertEquals(100, expected);
+
+    }
+
+    @Test
+    public void derivedListsLeaveOriginalUnchanged() {
+
+        PersistentUnrolledList<Integer> list = PersistentUnrolledList.of(8, Arrays.asList(0, 1, 2, 3, 4));
+        List<Integer> expected = new ArrayList<Integer>(list);
+        PersistentUnrolledList<Integer> current = list;
+        List<Integer> currentExpected = new ArrayList<Integer>(expected);
+        Random random = new Random(17);
+        for (int step = 0; step < 300; step++) {
+            int index = random.nextInt(currentExpected.size() + 1);
+            if (random.nextInt(3) == 0 && index < currentExpected.size()) {
+                current = current.minus(index);
+                currentExpected.remove(index);
+            } else if (random.nextBoolean() && index < currentExpected.size()) {
+                current = current.with(index, step);
+                currentExpected.set(index, step);
+            } else {
+                current = current.plus(index, step);
+                currentExpected.add(index, step);
+            }
+        }
+        assertEquals(currentExpected, current);
+        assertEquals(expected, list);
+
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotIsReadOnly() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>();
+        list.add(1);
+        list.snapshot().add(2);
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks <tt>removeIf</tt>, <tt>removeAll</tt> and <tt>retainAll</tt>
+ * against an <tt>ArrayList</tt>.
+ */
+public class UnrolledLinkedListBulkRemoveTest {
+
+    @Test
+    public void removeIf() {
+
+        Random random = new Random(10);
+        for (int round = 0; round < 200; round++) {
+            UnrolledLinkedList<Integer> list = newList(round);
+            List<Integer> expected = fill(list, random, random.nextInt(500));
+            final int modulus = 1 + random.nextInt(5);
+            assertEquals(expected.removeIf(e -> e != null && e % modulus == 0),
+                    list.removeIf(e -> e != null && e % modulus == 0));
+            check(expected, list);
+        }
+
+    }
+
+    @Test
+    public void removeAll() {
+
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            UnrolledLinkedList<Integer> list = newList(round);
+            List<Integer> expected = fill(list, random, random.nextInt(500));
+            Collection<Integer> c = argument(random);
+            assertEquals(expected.removeAll(c), list.removeAll(c));
+            check(expected, list);
+        }
+
+    }
+
+    @Test
+    public void retainAll() {
+
+        Random random = new Random(12);
+        for (int round = 0; round < 200; round++) {
+            UnrolledLinkedList<Integer> list = newList(round);
+            List<Integer> expected = fill(list, random, random.nextInt(500));
+            Collection<Integer> c = argument(random);
+            assertEquals(expected.retainAll(c), list.retainAll(c));
+            check(expected, list);
+        }
+
+    }
+
+    @Test
+    public void removeNothingAndEverything() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8);
+        List<Integer> expected = fill(list, new Random(13), 100);
+        assertFalse(list.removeIf(e -> false));
+        assertFalse(list.removeAll(Collections.emptyList()));
+        assertFalse(list.retainAll(new HashSet<Integer>(expected)));
+        check(expected, list);
+        assertTrue(list.removeIf(e -> true));
+        check(Collections.<Integer>emptyList(), list);
+        list.add(1);
+        assertEquals(Arrays.asList(1), list);
+
+    }
+
+    @Test
+    public void removeAfterIteratorEdits() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(16);
+        List<Integer> expected = fill(list, new Random(14), 100);
+        ListIterator<Integer> it = list.listIterator(40);
+        for (int i = 0; i < 5; i++) {
+            it.add(i);
+            expected.add(40 + i, i);
+        }
+        assertEquals(expected.removeIf(e -> e != null && e < 3), list.removeIf(e -> e != null && e < 3));
+        check(expected, list);
+
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void removeIfNull() {
+
+        new UnrolledLinkedList<Integer>().removeIf(null);
+
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void retainAllNull() {
+
+        new UnrolledLinkedList<Integer>().retainAll(null);
+
+    }
+
+    private static UnrolledLinkedList<Integer> newList(int round) {
+
+        return new UnrolledLinkedList<Integer>(8 + round % 3 * 12, round % 2 == 0);
+
+    }
+
+    private static List<Integer> fill(UnrolledLinkedList<Integer> list, Random random, int size) {
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            Integer element = (random.nextInt(20) == 0) ? null : random.nextInt(100);
+            list.add(element);
+            expected.add(element);
+        }
+        return expected;
+
+    }
+
+    /**
+     * Returns a small list or a large set, so that both the plain and the
+     * hashed lookup are used.
+     */
+    private static Collection<Integer> argument(Random random) {
+
+        Collection<Integer> c = random.nextBoolean() ? new ArrayList<Integer>() : new HashSet<Integer>();
+        for (int i = random.nextInt(random.nextBoolean() ? 4 : 80); i > 0; i--) {
+            c.add((random.nextInt(10) == 0) ? null : random.nextInt(100));
+        }
+        return c;
+
+    }
+
+    private static void check(List<Integer> expected, UnrolledLinkedList<Integer> list) {
+
+        assertEquals(expected, list);
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+        ListIterator<Integer> it = list.listIterator(list.size());
+        for (int i = expected.size() - 1; i >= 0; i--) {
+            assertEquals(expected.get(i), it.previous());
+        }
+        assertFalse(it.hasPrevious());
+
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the bulk read operations see the right elements while a node
+ * has a gap left by list iterator edits.
+ */
+public class UnrolledLinkedListGapTest {
+
+    @Test
+    public void bulkReadsAfterIteratorEdits() {
+
+        Random random = new Random(19);
+        for (int round = 0; round < 300; round++) {
+            UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(16, round % 2 == 0);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                list.add(i);
+                expected.add(i);
+            }
+            int index = random.nextInt(expected.size() + 1);
+            ListIterator<Integer> it = list.listIterator(index);
+            ListIterator<Integer> e = expected.listIterator(index);
+            // a run of edits at one position opens a gap in the node
+            for (int i = random.nextInt(12); i > 0; i--) {
+                if (random.nextBoolean() && e.hasNext()) {
+                    assertEquals(e.next(), it.next());
+                    it.remove();
+                    e.remove();
+                } else {
+                    Integer element = (random.nextInt(4) == 0) ? null : 1000 + i;
+                    it.add(element);
+                    e.add(element);
+                }
+            }
+            checkReads(expected, list);
+            // the reads must not have closed the gap the iterator relies on
+            it.add(-1);
+            e.add(-1);
+            assertEquals(expected, list);
+        }
+
+    }
+
+    @Test
+    public void editsThroughSubListIterator() {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+            expected.add(i);
+        }
+        List<Integer> sub = list.subList(20, 60);
+        List<Integer> expectedSub = expected.subList(20, 60);
+        ListIterator<Integer> it = sub.listIterator(10);
+        ListIterator<Integer> e = expectedSub.listIterator(10);
+        for (int i = 0; i < 5; i++) {
+            it.add(-i);
+            e.add(-i);
+        }
+        it.previous();
+        it.remove();
+        e.previous();
+        e.remove();
+        assertArrayEquals(expectedSub.toArray(), sub.toArray());
+        assertEquals(expectedSub, sub);
+        checkReads(expected, list);
+
+    }
+
+    @Test
+    public void addAllFromListWithGap() {
+
+        UnrolledLinkedList<Integer> source = new UnrolledLinkedList<Integer>(8);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 50; i++) {
+            source.add(i);
+            expected.add(i);
+        }
+        ListIterator<Integer> it = source.listIterator(13);
+        it.add(100);
+        it.add(101);
+        expected.add(13, 100);
+        expected.add(14, 101);
+        UnrolledLinkedList<Integer> target = new UnrolledLinkedList<Integer>(8);
+        target.addAll(source);
+        assertEquals(expected, target);
+        it.add(102);
+        expected.add(15, 102);
+        assertEquals(expected, source);
+
+    }
+
+    private static void checkReads(List<Integer> expected, UnrolledLinkedList<Integer> list) {
+
+        assertEquals(expected.size(), list.size());
+        assertArrayEquals(expected.toArray(), list.toArray());
+        assertArrayEquals(expected.toArray(new Integer[0]), list.toArray(new Integer[0]));
+        for (Integer o : new Integer[] {null, -1, 1000, 1003, 5, 42}) {
+            assertEquals(expected.indexOf(o), list.indexOf(o));
+            assertEquals(expected.lastIndexOf(o), list.lastIndexOf(o));
+            assertEquals(expected.contains(o), list.contains(o));
+        }
+        List<Integer> seen = new ArrayList<Integer>();
+        list.forEach(seen::add);
+        assertEquals(expected, seen);
+        seen.clear();
+        for (Iterator<Integer> it = list.iterator(); it.hasNext(); ) {
+            seen.add(it.next());
+        }
+        assertEquals(expected, seen);
+        seen.clear();
+        Iterator<Integer> it = list.iterator();
+        if (it.hasNext()) {
+            seen.add(it.next());
+        }
+        it.forEachRemaining(seen::add);
+        assertEquals(expected, seen);
+        seen.clear();
+        Spliterator<Integer> spliterator = list.spliterator();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            prefix.forEachRemaining(seen::add);
+        }
+        spliterator.forEachRemaining(seen::add);
+        assertEquals(expected, seen);
+        assertEquals(expected, list.stream().collect(Collectors.toList()));
+        assertEquals(expected, list.snapshot());
+        List<Integer> reversed = new ArrayList<Integer>(expected);
+        Collections.reverse(reversed);
+        assertEquals(reversed, list.reversed());
+        if (expected.size() > 4) {
+            int from = expected.size() / 4;
+            int to = expected.size() - from;
+            assertArrayEquals(expected.subList(from, to).toArray(), list.subList(from, to).toArray());
+        }
+        assertEquals(expected.hashCode(), list.hashCode());
+        assertEquals(list, expected);
+
+    }
+
+}
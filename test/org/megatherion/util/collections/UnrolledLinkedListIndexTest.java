@@ -0,0 +1,185 @@
+/*
+ * This source code is placed in the public domain. This means you can use it
+ * without any restrictions.
+ */
+
+package org.megatherion.util.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that positional accesses find the right element after mixed edits,
+ * with and without the node index, and that the finger stays consistent when
+ * the list is read by several threads.
+ */
+public class UnrolledLinkedListIndexTest {
+
+    @Test
+    public void mixedEditsWithoutIndex() {
+
+        mixedEdits(false, 8);
+        mixedEdits(false, 33);
+
+    }
+
+    @Test
+    public void mixedEditsWithIndex() {
+
+        mixedEdits(true, 8);
+        mixedEdits(true, 33);
+
+    }
+
+    @Test
+    public void sequentialGetsAfterEdits() {
+
+        for (boolean indexed : new boolean[] {false, true}) {
+            UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(16, indexed);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < 2000; i++) {
+                list.add(i);
+                expected.add(i);
+            }
+            for (int i = 0; i < 2000; i += 3) {
+                list.remove(i / 2);
+                expected.remove(i / 2);
+            }
+            // forwards, backwards and in strides, so that the finger is
+            // used from both sides
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i), list.get(i));
+            }
+            for (int i = expected.size() - 1; i >= 0; i--) {
+                assertEquals(expected.get(i), list.get(i));
+            }
+            for (int i = 0; i < expected.size(); i += 37) {
+                list.set(i, -i);
+                expected.set(i, -i);
+                assertEquals(expected.get(expected.size() - 1 - i), list.get(expected.size() - 1 - i));
+            }
+            assertEquals(expected, list);
+        }
+
+    }
+
+    @Test
+    public void concurrentReaders() throws InterruptedException {
+
+        for (boolean indexed : new boolean[] {false, true}) {
+            final UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(8, indexed);
+            for (int i = 0; i < 10000; i++) {
+                list.add(i);
+            }
+            final AtomicInteger wrong = new AtomicInteger();
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final Random random = new Random(t);
+                threads[t] = new Thread() {
+
+                    @Override
+                    public void run() {
+
+                        for (int i = 0; i < 200000; i++) {
+                            int index = random.nextInt(list.size());
+                            if (list.get(index) != index) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+
+                    }
+
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, wrong.get());
+        }
+
+    }
+
+    private static void mixedEdits(boolean indexed, int nodeCapacity) {
+
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<Integer>(nodeCapacity, indexed);
+        List<Integer> expected = new ArrayList<Integer>();
+        Random random = new Random(nodeCapacity);
+        for (int step = 0; step < 20000; step++) {
+            int size = expected.size();
+            int index = random.nextInt(size + 1);
+            switch (random.nextInt(8)) {
+                case 0:
+                case 1:
+                    list.add(index, step);
+                    expected.add(index, step);
+                    break;
+                case 2:
+                    if (size > 0) {
+                        index = random.nextInt(size);
+                        assertEquals(expected.remove(index), list.remove(index));
+                    }
+                    break;
+                case 3:
+                    if (size > 0) {
+                        index = random.nextInt(size);
+                        assertEquals(expected.set(index, -step), list.set(index, -step));
+                    }
+                    break;
+                case 4: {
+                    List<Integer> c = new ArrayList<Integer>();
+                    for (int i = random.nextInt(3 * nodeCapacity); i > 0; i--) {
+                        c.add(step + i);
+                    }
+                    list.addAll(index, c);
+                    expected.addAll(index, c);
+                    break;
+                }
+                case 5: {
+                    int to = index + random.nextInt(size - index + 1);
+                    list.subList(index, to).clear();
+                    expected.subList(index, to).clear();
+                    break;
+                }
+                case 6: {
+                    ListIterator<Integer> it = list.listIterator(index);
+                    ListIterator<Integer> e = expected.listIterator(index);
+                    for (int i = random.nextInt(10); i > 0 && e.hasNext(); i--) {
+                        assertEquals(e.next(), it.next());
+                        if (random.nextBoolean()) {
+                            it.remove();
+                            e.remove();
+                        } else {
+                            it.add(step);
+                            e.add(step);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    if (size > 0) {
+                        index = random.nextInt(size);
+                        assertEquals(expected.get(index), list.get(index));
+                    }
+                    break;
+            }
+            assertEquals(expected.size(), list.size());
+            if (step % 500 == 0) {
+                assertEquals(expected, list);
+            }
+        }
+        assertEquals(expected, list);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), list.get(i));
+        }
+
+    }
+
+}